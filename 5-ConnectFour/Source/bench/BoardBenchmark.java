@@ -0,0 +1,109 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import code.Board;
+import code.LineHandler;
+import code.Piece;
+
+/**
+ * Benchmarks of the board operations done at every node of a search: placing and removing a piece, and evaluating the board
+ * @author Zach Kemphues
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+	@Param({"opening", "midgame", "endgame"})
+	public String position;
+	
+	private Board _board;
+	private LineHandler _lines;
+	private int[] _cols; //the open columns of the board
+	private int[] _rows; //the row a piece placed in each open column lands in
+	private Piece _next;
+	
+	@Setup
+	public void setUp() {
+		_board = Positions.board(position);
+		_next = _board.lastPiece().next();
+		int open = 0;
+		for(int col = 0; col < _board.columnsOnBoard(); col++)
+			if(!_board.isFull(col))
+				open++;
+		_cols = new int[open];
+		_rows = new int[open];
+		int i = 0;
+		for(int col = 0; col < _board.columnsOnBoard(); col++) {
+			if(_board.isFull(col))
+				continue;
+			_cols[i] = col;
+			int row = 0;
+			while(_board.pieceAt(col, row) != Piece.EMPTY)
+				row++;
+			_rows[i++] = row;
+		}
+		//a line handler holding the same pieces as the board
+		_lines = new LineHandler(_board.columnsOnBoard(), _board.rowsOnBoard());
+		for(int col = 0; col < _board.columnsOnBoard(); col++)
+			for(int row = 0; row < _board.rowsOnBoard(); row++)
+				if(_board.pieceAt(col, row) == Piece.P1 || _board.pieceAt(col, row) == Piece.P2)
+					_lines.place(_board.pieceAt(col, row), col, row);
+	}
+	
+	/**
+	 * Places and removes a piece in every open column, checking for a win each time
+	 */
+	@Benchmark
+	public void placeUndo(Blackhole bh) {
+		for(int col : _cols) {
+			_board.place(_next, col);
+			bh.consume(_board.gameWon());
+			_board.undo();
+		}
+	}
+	/**
+	 * Updates the line counts for a piece placed and removed in every open column
+	 */
+	@Benchmark
+	public void linePlaceRemove(Blackhole bh) {
+		for(int i = 0; i < _cols.length; i++) {
+			bh.consume(_lines.place(_next, _cols[i], _rows[i]));
+			_lines.remove(_next, _cols[i], _rows[i]);
+		}
+	}
+	/**
+	 * Evaluates the board as a leaf of the search would
+	 */
+	@Benchmark
+	public int evaluate() {
+		return _board.evaluate();
+	}
+	/**
+	 * Places a piece in every open column and evaluates the board, which is what the last ply of a search does
+	 */
+	@Benchmark
+	public void placeEvaluateUndo(Blackhole bh) {
+		for(int col : _cols) {
+			_board.place(_next, col);
+			bh.consume(_board.evaluate());
+			_board.undo();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package bench;
+
+import code.Board;
+
+/**
+ * The fixed boards the benchmarks are run on, so results can be compared between versions of the engine
+ * Each board is given as the columns played in order, starting with Player1.
+ * @author Zach Kemphues
+ */
+public class Positions {
+	/** Four moves in, with almost the whole tree left to search */
+	public static final String OPENING = "3323";
+	/** Halfway through a game with threats on both sides */
+	public static final String MIDGAME = "33413350334652";
+	/** Late in a game, where several columns are full */
+	public static final String ENDGAME = "33323013321100221226110666";
+	
+	/**
+	 * @param name - "opening", "midgame" or "endgame"
+	 * @return - a new standard board with the named position played on it
+	 */
+	public static Board board(String name) {
+		String moves;
+		if(name.equals("opening"))
+			moves = OPENING;
+		else if(name.equals("midgame"))
+			moves = MIDGAME;
+		else if(name.equals("endgame"))
+			moves = ENDGAME;
+		else
+			throw new IllegalArgumentException("Unknown position " + name);
+		Board b = new Board();
+		for(int i = 0; i < moves.length(); i++) {
+			if(!b.place(b.lastPiece().next(), moves.charAt(i) - '0') || b.gameWon())
+				throw new IllegalStateException("The " + name + " position is not a game in progress");
+		}
+		return b;
+	}
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import code.Board;
+import code.GTN;
+import code.SearchContext;
+
+/**
+ * Benchmarks a complete fixed depth search from each of the benchmark positions
+ * Every search starts with an empty transposition table and no move ordering history, like the first move of a game.
+ * The context is made once and emptied before each search, so its table isn't counted in the allocation rate.
+ * The score is searches per second, and JMH reports the nodes counter the same way, as nodes searched per second.
+ * @author Zach Kemphues
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+	@Param({"opening", "midgame", "endgame"})
+	public String position;
+	@Param({"4", "6", "8"})
+	public int depth;
+	
+	private Board _board;
+	private SearchContext _context;
+	
+	/**
+	 * The number of nodes searched, which JMH divides by the time of each iteration like the searches themselves
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Nodes {
+		public long nodes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			nodes = 0;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		_board = Positions.board(position);
+		_context = new SearchContext(_board.columnsOnBoard());
+	}
+	@Setup(Level.Invocation)
+	public void forget() {
+		_context.forget();
+	}
+	
+	@Benchmark
+	public int search(Nodes counter) {
+		long before = _context.totalNodes();
+		GTN tree = new GTN(_board, 0, depth, _context);
+		counter.nodes += _context.totalNodes() - before;
+		return tree.getBestMove();
+	}
+}
@@ -0,0 +1,207 @@
+package code;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyzes a file of positions without a user interface, writing the best move, its value and the expected line of play for each one
+ * Each input line is a position given as the columns played from the empty board, counting from 0, either as digits like "3323"
+ * or separated by spaces or commas like "3 3 12 2" for boards with more than 10 columns.  Blank lines and lines starting with # are copied as they are.
+ * Each output line is the input line followed by tab separated columns: the best move, its value (P1_WIN, P2_WIN or the evaluation),
+ * the depth searched and the principal variation.  A line that is not a legal unfinished game gets "error" and the reason instead.
+ * Positions are searched in parallel on all cores, but written in the order they were read.  Only a few positions per thread
+ * are read ahead, so any size of file can be analyzed in the same amount of memory.
+ * @author Zach Kemphues
+ */
+public class Analyzer {
+	private static final int DEFAULT_DEPTH = 12;
+	private static final int TABLE_BITS = 18;
+	private static final int READ_AHEAD = 4; //positions read ahead for each thread, enough to keep every thread busy
+
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int WIN_LENGTH;
+	private final int DEPTH;
+	private final long TIME_BUDGET;
+	private final int THREADS;
+
+	private ThreadLocal<TranspositionTable> _tables; //each thread reuses one table instead of allocating one per position
+
+	/**
+	 * Prepares an analyzer for positions on a board of the given size
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param winLength - the number of pieces in a row needed to win
+	 * @param depth - the depth to search each position to, or 0 for no limit
+	 * @param millis - the number of milliseconds each position may take, or 0 for no limit
+	 * @param threads - the number of positions to search at once
+	 */
+	public Analyzer(int cols, int rows, int winLength, int depth, long millis, int threads) {
+		if(depth <= 0 && millis <= 0)
+			throw new IllegalArgumentException("Give a depth or a time, otherwise every position is searched to the end of the game");
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		WIN_LENGTH = winLength;
+		DEPTH = depth;
+		TIME_BUDGET = millis;
+		THREADS = threads;
+		_tables = ThreadLocal.withInitial(() -> new TranspositionTable(TABLE_BITS, TranspositionTable.DEPTH_PREFERRED));
+	}
+	/**
+	 * Analyzes every position read, writing a line for each one in the same order
+	 * @param in - where to read the positions from
+	 * @param out - where to write the results
+	 * @return - the number of positions analyzed
+	 * @throws IOException - if the positions cannot be read or the results cannot be written
+	 * @throws InterruptedIOException - if the thread is interrupted, in which case only some of the results were written
+	 */
+	public long analyze(Reader in, Writer out) throws IOException {
+		BufferedReader reader = in instanceof BufferedReader ? (BufferedReader)in : new BufferedReader(in);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>(); //in input order
+		long count = 0;
+		long written = 0;
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				final String position = line;
+				pending.add(pool.submit(() -> analyzeLine(position)));
+				count++;
+				while(!pending.isEmpty() && (pending.size() > THREADS*READ_AHEAD || pending.peek().isDone())) {
+					write(pending.remove(), out);//waits for the oldest position only once enough are queued
+					written++;
+				}
+			}
+			while(!pending.isEmpty()) {
+				write(pending.remove(), out);
+				written++;
+			}
+			out.flush();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();//keep the interrupt for the caller
+			out.flush();
+			throw new InterruptedIOException("Interrupted after writing " + written + " of the " + count + " positions read");
+		} catch(ExecutionException e) {
+			throw new IllegalStateException("A position could not be analyzed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return count;
+	}
+	//waits for a position to be analyzed and writes its line
+	private static void write(Future<String> result, Writer out) throws IOException, InterruptedException, ExecutionException {
+		out.write(result.get());
+		out.write('\n');
+	}
+	/**
+	 * Analyzes a single position
+	 * Each position is searched with an empty transposition table, so a depth limited analysis always gives the same result.
+	 * @param line - the position, in the input format described above
+	 * @return - the line to write for the position, in the output format described above
+	 */
+	public String analyzeLine(String line) {
+		String trimmed = line.trim();
+		if(trimmed.isEmpty() || trimmed.startsWith("#"))
+			return line;
+		Board b;
+		try {
+			b = parse(trimmed);
+		} catch(IllegalArgumentException e) {
+			return line + "\terror\t" + e.getMessage();
+		}
+		TranspositionTable table = _tables.get();
+		table.clear();
+		IterativeDeepening search = new IterativeDeepening(new SearchContext(NUM_COLS, table), TIME_BUDGET, 0, DEPTH);
+		int move = search.bestMove(b);
+		StringBuilder s = new StringBuilder(line.length() + 64);
+		s.append(line).append('\t').append(move).append('\t').append(value(search.value())).append('\t').append(search.depthReached()).append('\t');
+		int[] pv = search.principalVariation();
+		for(int i = 0; i < pv.length; i++) {
+			if(i > 0)
+				s.append(' ');
+			s.append(pv[i]);
+		}
+		return s.toString();
+	}
+	//plays the moves of a position on a new board
+	private Board parse(String moves) {
+		String[] cols;
+		if(moves.matches("[0-9]+"))
+			cols = moves.split("");
+		else
+			cols = moves.split("[\\s,]+");
+		Board b = new Board(NUM_COLS, NUM_ROWS, WIN_LENGTH);
+		for(String c : cols) {
+			if(b.gameWon())
+				throw new IllegalArgumentException("moves continue after the game was won");
+			int col;
+			try {
+				col = Integer.parseInt(c);
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("\"" + c + "\" is not a column");
+			}
+			if(col < 0 || col >= NUM_COLS)
+				throw new IllegalArgumentException("column " + col + " is not on the board");
+			if(!b.place(b.lastPiece().next(), col))
+				throw new IllegalArgumentException("column " + col + " is full");
+		}
+		if(b.gameWon() || b.fullBoard())
+			throw new IllegalArgumentException("the game is over");
+		return b;
+	}
+	//writes a value from GTN.evaluate() with wins spelled out
+	private static String value(int v) {
+		if(v == GTN.P1_WIN)
+			return "P1_WIN";
+		if(v == GTN.P2_WIN)
+			return "P2_WIN";
+		return Integer.toString(v);
+	}
+
+	/**
+	 * Analyzes a file of positions on the standard board
+	 * @param args - the file of positions, or - for standard input, then optionally the file to write or - for standard output,
+	 *               the budget for each position as depth=N or time=MS and the number of threads
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: Analyzer <positions file|-> [output file|-] [depth=N|time=MS] [threads]");
+			return;
+		}
+		int depth = DEFAULT_DEPTH;
+		long millis = 0;
+		if(args.length > 2) {
+			String[] pair = args[2].split("=");
+			if(pair.length != 2 || !(pair[0].equals("depth") || pair[0].equals("time")))
+				throw new IllegalArgumentException("Expected depth=N or time=MS instead of \"" + args[2] + "\"");
+			if(pair[0].equals("depth"))
+				depth = Integer.parseInt(pair[1]);
+			else {
+				depth = 0;
+				millis = Long.parseLong(pair[1]);
+			}
+		}
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		Analyzer a = new Analyzer(7, 6, Board.DEFAULT_WIN_LENGTH, depth, millis, threads);
+		Reader in = args[0].equals("-") ? new InputStreamReader(System.in) : new FileReader(args[0]);
+		Writer out = new BufferedWriter(args.length > 1 && !args[1].equals("-") ? new FileWriter(args[1]) : new OutputStreamWriter(System.out));
+		try {
+			a.analyze(in, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+}
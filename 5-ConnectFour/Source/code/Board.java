@@ -1,21 +1,39 @@
 package code;
-import java.util.LinkedList;
+import java.util.Random;
 
 /**
- * A board for a game of Connect Four
+ * A board for a game of Connect Four, or Connect-N with any number in a row needed to win
+ * The pieces are stored as a pair of bitboards, one for each player, with each column taking up rowsOnBoard()+1 bits.
+ * The extra bit at the top of every column is always empty and keeps lines from wrapping between columns.
+ * Bitboards longer than 64 bits are split over several longs, so boards can be any size.  On those boards a win is found by
+ * walking out from the piece just placed in each direction, so placing a piece costs the same however big the board is.
+ * Boards that fit in one long check the whole board at once with shifts instead, which is faster.
  * @author Zach Kemphues
  */
 public class Board {
-	
+	private static final long ZOBRIST_SEED = 0x436F6E6E656374L;//the same keys are used for every board so hashes can be compared
+	/** The number of pieces in a row needed to win unless another number is given */
+	public static final int DEFAULT_WIN_LENGTH = 4;
+
 	private final int NUM_ROWS;
 	private final int NUM_COLS;
-	private Piece[][] _grid;
-	private int[] _playablePosition; //the height of the empty slot in each column
+	private final int WIN_LENGTH;
+	private final int COL_BITS; //bits used by each column, including the empty bit on top
+	private final int BITS; //bits used by the whole board
+	private final int[] DIRECTIONS; //the distance in bits between neighbouring cells of a line, for each direction a line can go
+	private long[] _p1; //bitboard of the pieces played by Player1, bit i is bit i%64 of word i/64
+	private long[] _p2; //bitboard of the pieces played by Player2
+	private int[] _height; //the height of the empty slot in each column
 	private int _piecesPlayed;
 	private boolean _gameWon;
-	private LinkedList<Piece> _turn;//a stack of all the turns that have been taken
+	private int[] _turnCol; //a stack of the column played on each turn, the piece played is found from the bitboards
 	private LineHandler _lines;
-	
+	private long[][] _zobrist; //a random key for each player in each cell, see hash()
+	private long _hash;
+	private long _mirrorHash;
+	private long _bottom; //a bit at the bottom of every column, only used by boards that fit in one long
+	private long[] _before; //working space for winningCells()
+
 	/**
 	 * Creates a board to play Connect Four on with the standard 7 columns and 6 rows
 	 */
@@ -28,30 +46,65 @@ public class Board {
 	 * @param rows - the number of rows on the board
 	 */
 	public Board(int cols, int rows) {
+		this(cols, rows, DEFAULT_WIN_LENGTH);
+	}
+	/**
+	 * Creates a board to play Connect-N on
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param winLength - the number of pieces in a row needed to win
+	 */
+	public Board(int cols, int rows, int winLength) {
+		if(cols < 1 || rows < 1 || winLength < 2)
+			throw new IllegalArgumentException("A " + cols + "x" + rows + " board with " + winLength + " in a row to win can't be played on");
 		NUM_COLS = cols;
 		NUM_ROWS = rows;
-		_lines = new LineHandler(cols, rows);
+		WIN_LENGTH = winLength;
+		COL_BITS = rows + 1;
+		BITS = cols*COL_BITS;
+		DIRECTIONS = new int[] {1, COL_BITS, COL_BITS - 1, COL_BITS + 1};//vertical, horizontal and both diagonals
+		_lines = new LineHandler(cols, rows, winLength);
 		_gameWon = false;
-		initGrid();
-		_playablePosition = new int[cols]; //all default correctly to 0
+		_p1 = new long[(BITS + Long.SIZE - 1)/Long.SIZE];
+		_p2 = new long[_p1.length];
+		_height = new int[cols]; //all default correctly to 0
 		_piecesPlayed = 0;
-		_turn = new LinkedList<Piece>();
-		_turn.push(new Player2());
+		_turnCol = new int[cols*rows + 1];
+		_zobrist = new long[2][cols*rows];
+		Random rand = new Random(ZOBRIST_SEED);
+		for(int i = 0; i < cols*rows; i++) {
+			_zobrist[0][i] = rand.nextLong();
+			_zobrist[1][i] = rand.nextLong();
+		}
+		_hash = 0;
+		_mirrorHash = 0;
+		_bottom = 0;
+		_before = new long[winLength];
+		if(compact()) {
+			for(int c = 0; c < cols; c++)
+				_bottom |= 1L << c*COL_BITS;
+		}
 	}
-	//initializes the board and places empty pieces at every location
-	private void initGrid() {
-		_grid = new Piece[columnsOnBoard()][rowsOnBoard()];
-		for(int r = rowsOnBoard() - 1; r >= 0; r--)
-			for(int c = 0; c < columnsOnBoard(); c++) {
-				_grid[c][r] = new Empty();
-				_grid[c][r].setPosition(c, r);
-			}	
+	/**
+	 * Creates an independent copy of the board, so that it can be searched on another thread
+	 * @return - a board with the same pieces played in the same order
+	 */
+	public Board copy() {
+		Board b = new Board(NUM_COLS, NUM_ROWS, WIN_LENGTH);
+		for(int i = 1; i <= _piecesPlayed; i++) {
+			int col = _turnCol[i];
+			b.place(pieceAt(col, b._height[col]), col);//the copy's column is as high as this one's was on that turn
+		}
+		return b;
 	}
 	/**
-	 * @return - the last piece played
+	 * @return - the last piece played, or Player2's piece if no pieces have been played so Player1 is always first
 	 */
 	public Piece lastPiece() {
-		return _turn.peek();
+		if(_piecesPlayed == 0)
+			return Piece.P2;
+		int col = _turnCol[_piecesPlayed];
+		return pieceAt(col, _height[col] - 1);
 	}
 	/**
 	 * @return - the number of rows on the board
@@ -65,12 +118,25 @@ public class Board {
 	public int columnsOnBoard() {
 		return NUM_COLS;
 	}
+	/**
+	 * @return - the number of pieces in a row needed to win
+	 */
+	public int winLength() {
+		return WIN_LENGTH;
+	}
+	/**
+	 * @return - true if the board fits in a 64 bit bitboard, ie. columnsOnBoard()*(rowsOnBoard()+1) is at most 64,
+	 * which pieces(), positionKey() and the things that use them need
+	 */
+	public boolean compact() {
+		return _p1.length == 1;
+	}
 	/**
 	 * @param col - the column being checked
 	 * @return - true if the column is full, false otherwise
 	 */
 	public boolean isFull(int col) {
-		return _playablePosition[col] == rowsOnBoard();
+		return _height[col] == rowsOnBoard();
 	}
 	/**
 	 * Attempts to place a piece in the column
@@ -82,40 +148,177 @@ public class Board {
 	public boolean place(Piece p, int col) {
 		if(isFull(col))
 			return false;
-		int row = _playablePosition[col]++;
-		_grid[col][row] = p;
+		int row = _height[col]++;
+		int i = col*COL_BITS + row;
 		_piecesPlayed++;
-		_grid[col][row].setPosition(col, row);
-		_turn.push(p);
-		if(_lines.place(p, col, row))
-			_gameWon = true;
+		_turnCol[_piecesPlayed] = col;
+		_lines.place(p, col, row);
+		long[] pieces = p == Piece.P1 ? _p1 : _p2;
+		pieces[i >>> 6] |= 1L << i;
+		_gameWon = compact() ? connects(pieces[0]) : connects(pieces, i);
+		toggleHash(p, col, row);
 		return true;
 	}
-	//removes the piece from the board
-	private void remove(Piece p) {
-		int row = p.getRow();
-		int col = p.getCol();
-		_playablePosition[col]--;
-		_grid[col][row] = new Empty();
-		_lines.remove(p,col,row);
-		_piecesPlayed--;
-	}
 	/**
 	 * Reverts the board to the previous move
 	 */
 	public void undo() {
 		_gameWon = false;
-		remove(_turn.pop());
+		int col = _turnCol[_piecesPlayed--];
+		int row = --_height[col];
+		int i = col*COL_BITS + row;
+		long bit = 1L << i;
+		Piece p = (_p1[i >>> 6] & bit) != 0 ? Piece.P1 : Piece.P2;
+		_p1[i >>> 6] &= ~bit;
+		_p2[i >>> 6] &= ~bit;
+		_lines.remove(p, col, row);
+		toggleHash(p, col, row);
+	}
+	//adds or removes the piece at col,row from both hashes
+	private void toggleHash(Piece p, int col, int row) {
+		long[] keys = _zobrist[p.id()];
+		_hash ^= keys[col*NUM_ROWS + row];
+		_mirrorHash ^= keys[(NUM_COLS - 1 - col)*NUM_ROWS + row];
+	}
+	/**
+	 * Returns a Zobrist hash of the pieces on the board, used to recognize positions reached through different move orders
+	 * The hash is updated as pieces are placed and removed, so it costs nothing to read
+	 * @return - the hash of the board
+	 */
+	public long hash() {
+		return _hash;
+	}
+	/**
+	 * @return - the hash the board would have if it were flipped left to right
+	 */
+	public long mirrorHash() {
+		return _mirrorHash;
+	}
+	/**
+	 * Returns one player's pieces as a bitboard, for compact() boards only
+	 * Bit col*(rowsOnBoard()+1) + row is set if the player has a piece at col,row.  The bit above the top row of each column is never set.
+	 * @param p1 - true for Player1's pieces, false for Player2's
+	 * @return - the bitboard of the player's pieces
+	 */
+	public long pieces(boolean p1) {
+		checkCompact();
+		return p1 ? _p1[0] : _p2[0];
+	}
+	/**
+	 * Returns a key that identifies the pieces on the board exactly, unlike hash() which can collide, for compact() boards only
+	 * Each column holds Player1's pieces with a marker bit just above the top piece.
+	 * @return - the key of the board
+	 */
+	public long positionKey() {
+		checkCompact();
+		return _p1[0] | ((_p1[0] | _p2[0]) + _bottom);
+	}
+	/**
+	 * Returns the cells the next piece in each column would land in, for compact() boards only
+	 * @return - a bitboard with one bit in each column that is not full
+	 */
+	public long playableCells() {
+		checkCompact();
+		return ((_p1[0] | _p2[0]) + _bottom) & _bottom*((1L << NUM_ROWS) - 1);
+	}
+	/**
+	 * Returns every empty cell where a piece of the player would complete a line long enough to win, for compact() boards only
+	 * Cells that can't be played yet are included, so a threat higher up a column can be found before the column reaches it.
+	 * Together with playableCells() this finds wins, moves that must be blocked and moves that let the opponent win in a few operations.
+	 * @param p1 - true for Player1, false for Player2
+	 * @return - a bitboard of the cells
+	 */
+	public long winningCells(boolean p1) {
+		checkCompact();
+		long b = p1 ? _p1[0] : _p2[0];
+		long cells = 0;
+		for(int shift : DIRECTIONS) {
+			//_before[n] has the cells with n of the player's pieces in a row just before them in this direction
+			_before[0] = -1L;
+			for(int n = 1; n < WIN_LENGTH; n++)
+				_before[n] = _before[n-1] & (n*shift < Long.SIZE ? b << n*shift : 0);
+			//add the cells with the rest of the line just after them
+			long after = -1L;
+			for(int n = 0; n < WIN_LENGTH && after != 0; n++) {
+				cells |= after & _before[WIN_LENGTH - 1 - n];
+				after &= (n + 1)*shift < Long.SIZE ? b >>> (n + 1)*shift : 0;
+			}
+		}
+		return cells & ~(_p1[0] | _p2[0]) & _bottom*((1L << NUM_ROWS) - 1);
+	}
+	//throws an exception if the board does not fit in a single long
+	private void checkCompact() {
+		if(!compact())
+			throw new IllegalStateException("A " + NUM_COLS + "x" + NUM_ROWS + " board does not fit in a 64 bit bitboard");
+	}
+	/**
+	 * @return - the key the board would have if it were flipped left to right
+	 */
+	public long mirrorPositionKey() {
+		long key = positionKey();
+		long column = (1L << COL_BITS) - 1;
+		long mirror = 0;
+		for(int c = 0; c < NUM_COLS; c++)
+			mirror |= ((key >>> c*COL_BITS) & column) << (NUM_COLS - 1 - c)*COL_BITS;
+		return mirror;
+	}
+	//returns true if a bitboard that fits in one long has a line long enough to win in any direction
+	private boolean connects(long b) {
+		return connects(b, DIRECTIONS, WIN_LENGTH);
+	}
+	/**
+	 * Finds lines on a bitboard that fits in one long by doubling runs of cells, which takes a few operations per direction
+	 * A line too long to fit in the long in some direction is never found in it, rather than the shifts wrapping around.
+	 * @param b - the cells, with an empty bit on top of each column so lines can't run from one column into the next
+	 * @param directions - the distance in bits between neighbouring cells of a line, for each direction a line can go
+	 * @param length - the number of cells in a row that make a line
+	 * @return - true if the cells have a line in any of the directions
+	 */
+	static boolean connects(long b, int[] directions, int length) {
+		for(int shift : directions) {
+			//keep the bits that start a run of len cells, doubling len each time until it is at least half the length
+			long runs = b;
+			int len = 1;
+			while(2*len <= length) {
+				runs &= len*shift < Long.SIZE ? runs >>> len*shift : 0;
+				len *= 2;
+			}
+			if(len < length)//two runs that overlap or touch make a line of the length
+				runs &= (length - len)*shift < Long.SIZE ? runs >>> (length - len)*shift : 0;
+			if(runs != 0)
+				return true;
+		}
+		return false;
+	}
+	//returns true if the piece at bit i of the bitboard is part of a line long enough to win in any direction
+	//the empty bit on top of each column stops a line going up or down a diagonal from wrapping into the next column
+	private boolean connects(long[] b, int i) {
+		for(int shift : DIRECTIONS) {
+			int count = 1;
+			for(int j = i + shift; j < BITS && (b[j >>> 6] & (1L << j)) != 0 && count < WIN_LENGTH; j += shift)
+				count++;
+			for(int j = i - shift; j >= 0 && (b[j >>> 6] & (1L << j)) != 0 && count < WIN_LENGTH; j -= shift)
+				count++;
+			if(count >= WIN_LENGTH)
+				return true;
+		}
+		return false;
 	}
 	/**
 	 * @param col - the column of the piece on the board
 	 * @param row - the row of the piece on the board
-	 * @return - the piece at col,row on the board
+	 * @return - the piece at col,row on the board, Piece.OUT_OF_BOUNDS if col,row is off the board
 	 */
 	public Piece pieceAt(int col, int row) {
 		if(col < 0 || col >= columnsOnBoard() || row < 0 || row >= rowsOnBoard())
-			return new OutOfBounds();
-		return _grid[col][row];
+			return Piece.OUT_OF_BOUNDS;
+		int i = col*COL_BITS + row;
+		long bit = 1L << i;
+		if((_p1[i >>> 6] & bit) != 0)
+			return Piece.P1;
+		if((_p2[i >>> 6] & bit) != 0)
+			return Piece.P2;
+		return Piece.EMPTY;
 	}
 	/**
 	 * @return - true if either player has won the game, false otherwise
@@ -123,6 +326,21 @@ public class Board {
 	public boolean gameWon() {
 		return _gameWon;
 	}
+	/**
+	 * @return - the number of pieces on the board
+	 */
+	public int piecesPlayed() {
+		return _piecesPlayed;
+	}
+	/**
+	 * @param turn - the turn, counting from 0 for the first piece played, less than piecesPlayed()
+	 * @return - the column the piece on that turn was played in
+	 */
+	public int moveAt(int turn) {
+		if(turn < 0 || turn >= _piecesPlayed)
+			throw new IndexOutOfBoundsException("Turn " + turn + " of " + _piecesPlayed);
+		return _turnCol[turn + 1];
+	}
 	/**
 	 * @return - true if the board is completely full, false otherwise
 	 */
@@ -137,7 +355,7 @@ public class Board {
 		String s = "";
 		for(int r = rowsOnBoard() - 1; r >= 0; r--) {
 			for(int c = 0; c < columnsOnBoard(); c++) {
-				s += _grid[c][r].toString();
+				s += pieceAt(c, r).toString();
 				s += " ";
 			}
 			s += "\n";
@@ -149,9 +367,9 @@ public class Board {
 	 * - GTN.P1_WIN indicates a winning board for the player, GTN.P2_WIN indicates a win for the computer.
 	 */
 	public int evaluate() {
-		if(gameWon() && lastPiece().toString().equals("P1"))
+		if(gameWon() && lastPiece() == Piece.P1)
 			return GTN.P1_WIN;
-		else if(gameWon() && lastPiece().toString().equals("P2"))
+		else if(gameWon())
 			return GTN.P2_WIN;
 		else {
 			int eval = _lines.oppsP1() - _lines.oppsP2();
@@ -0,0 +1,122 @@
+package code;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds an opening book by deep searching every position that can come up in the first few moves of a game
+ * Positions that are mirror images of each other are only searched once.  The searches run in parallel on all cores.
+ * @author Zach Kemphues
+ */
+public class BookGenerator {
+	private static final int DEFAULT_PLIES = 6;
+	private static final int DEFAULT_DEPTH = 12;
+
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int PLIES;
+	private final int DEPTH;
+	private List<int[]> _positions; //the moves leading to each position, in the order they were found
+	private HashSet<Long> _seen; //the keys of the positions found so far
+
+	/**
+	 * Prepares to build a book
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param plies - positions with fewer than this many pieces on the board are put in the book
+	 * @param depth - the depth each position is searched to
+	 */
+	public BookGenerator(int cols, int rows, int plies, int depth) {
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		PLIES = plies;
+		DEPTH = depth;
+	}
+	/**
+	 * Builds the book and writes it to a file
+	 * @param f - the file to write the book to
+	 * @throws IOException - if the book cannot be written
+	 */
+	public void generate(File f) throws IOException {
+		_positions = new ArrayList<int[]>();
+		_seen = new HashSet<Long>();
+		collect(new Board(NUM_COLS, NUM_ROWS), Piece.P1, new int[0]);
+
+		final int n = _positions.size();
+		final long[] keys = new long[n];
+		final int[] moves = new int[n];
+		final int[] scores = new int[n];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			Board b = replay(_positions.get(i));
+			GTN tree = new GTN(b, 0, DEPTH);//a fresh table each time, so the book does not depend on the order positions were searched in
+			long key = b.positionKey();
+			long mirror = b.mirrorPositionKey();
+			keys[i] = Math.min(key, mirror);
+			moves[i] = key <= mirror ? tree.getBestMove() : NUM_COLS - 1 - tree.getBestMove();
+			scores[i] = tree.evaluate();
+		});
+
+		//sort the records by key
+		Integer[] order = new Integer[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+		long[] sortedKeys = new long[n];
+		int[] sortedMoves = new int[n];
+		int[] sortedScores = new int[n];
+		int[] depths = new int[n];
+		for(int i = 0; i < n; i++) {
+			sortedKeys[i] = keys[order[i]];
+			sortedMoves[i] = moves[order[i]];
+			sortedScores[i] = scores[order[i]];
+			depths[i] = DEPTH;
+		}
+		OpeningBook.write(f, NUM_COLS, NUM_ROWS, PLIES, sortedKeys, sortedMoves, sortedScores, depths);
+	}
+	//finds every position with fewer than PLIES pieces that the game is not over in, skipping mirror images
+	private void collect(Board b, Piece next, int[] moves) {
+		if(moves.length >= PLIES || b.gameWon() || b.fullBoard())
+			return;
+		if(!_seen.add(Math.min(b.positionKey(), b.mirrorPositionKey())))
+			return;
+		_positions.add(moves);
+		for(int col = 0; col < NUM_COLS; col++) {
+			if(!b.place(next, col))
+				continue;
+			int[] child = Arrays.copyOf(moves, moves.length + 1);
+			child[moves.length] = col;
+			collect(b, next.next(), child);
+			b.undo();
+		}
+	}
+	//creates a board by playing the moves in order, starting with Player1
+	private Board replay(int[] moves) {
+		Board b = new Board(NUM_COLS, NUM_ROWS);
+		Piece p = Piece.P1;
+		for(int col : moves) {
+			b.place(p, col);
+			p = p.next();
+		}
+		return b;
+	}
+	/**
+	 * Builds an opening book for the standard board
+	 * @param args - the file to write, then optionally the number of plies to cover and the depth to search each position to
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: BookGenerator <book file> [plies] [search depth]");
+			return;
+		}
+		int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+		BookGenerator g = new BookGenerator(7, 6, plies, depth);
+		long start = System.currentTimeMillis();
+		g.generate(new File(args[0]));
+		System.out.println("Wrote " + g._positions.size() + " positions in " + (System.currentTimeMillis() - start)/1000 + " seconds");
+	}
+}
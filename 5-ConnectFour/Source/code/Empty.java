@@ -3,11 +3,12 @@ package code;
 /**
  * A piece that has not been placed yet
  * Used to avoid worrying about null pointers when checking an unknown piece on the board
+ * The only instance is Piece.EMPTY
  * @author Zach Kemphues
  */
-public class Empty implements Piece{
-	private int myRow;
-	private int myCol;
+public final class Empty implements Piece{
+	
+	Empty() {}
 	
 	@Override
 	public Piece next() {
@@ -15,19 +16,8 @@ public class Empty implements Piece{
 	}
 
 	@Override
-	public void setPosition(int c, int r) {
-		myRow = r;
-		myCol = c;
-	}
-
-	@Override
-	public int getCol() {
-		return myCol;
-	}
-
-	@Override
-	public int getRow() {
-		return myRow;
+	public int id() {
+		return EMPTY_ID;
 	}
 	
 	@Override
@@ -0,0 +1,14 @@
+package code;
+
+/**
+ * An AI player that decides where the player whose turn it is should place their next piece
+ * @author Zach Kemphues
+ */
+public interface Engine {
+	/**
+	 * Chooses a move for the player whose turn it is.  The board is left the way it was found.
+	 * @param b - the game board, which must have at least one playable column
+	 * @return - the column to place the next piece in
+	 */
+	public int bestMove(Board b);
+}
@@ -1,19 +1,50 @@
 package code;
+import java.util.Arrays;
 
 /**
  * An abstract game tree used to determine the best move for an AI player
+ * The tree is searched with alpha-beta pruning, so branches that cannot change the best move are skipped.
+ * The best move is the same one a full minimax search of the tree would find.
+ * The tree is walked without recursion or allocating anything, keeping the state of each node in a frame the context holds for its ply.
+ * Positions are remembered in the context's transposition table, so a position reached through a different order of moves is not searched again.
+ * If the context has threat analysis turned on, positions it proves the player who just moved wins are scored as wins without searching further.
+ * Below the root, moves that the threats on the board show can't be best, like not blocking an opponent about to win, are never searched.
+ * If the context has an opening book that contains the board, the book move is used without searching.
+ * Near the end of the game the context's solver, if it has one, is used to find the perfect move instead of searching,
+ * and on boards the context's database of solved positions holds the perfect move is always looked up.
+ * If the context's time or node limit is reached, the search stops early and its result should be thrown away.
+ * Every search is counted in stats(), and recorded as a SearchEvent when Flight Recorder is running.
  * @author Zach Kemphues
  */
 public class GTN {
 	public static final int P1_WIN = Integer.MAX_VALUE;
 	public static final int P2_WIN = Integer.MIN_VALUE;
-	
+
 	private Board _game;
+	private SearchContext _context;
 	private int _bestMove;
 	private int _bestMoveValue;
 	private int _logicLevel;
+	private boolean _fromBook;
+	private boolean _solved;
+	private long _nodes; //the counts for stats(), kept as plain fields so counting costs next to nothing
+	private long _leaves;
+	private long _cutoffs;
+	private int _maxPly;
+	private long _tableHits;
+	private long _nanos;
+	private int _value; //the value of the node the search just finished
 	private final int AI_DIFFICULTY;
-	
+	//where each part of a node's state is kept in its frame
+	private static final int ALPHA = 0;
+	private static final int BETA = 1;
+	private static final int WINDOW_ALPHA = 2; //the window the node was searched with, which decides the bound its value is stored as
+	private static final int WINDOW_BETA = 3;
+	private static final int BEST = 4;
+	private static final int BEST_COL = 5;
+	private static final int NEXT = 6; //the index in the move list of the move being searched
+	private static final int COUNT = 7; //the number of moves in the move list
+
 	/**
 	 * Creates, traverses, and evaluates the game tree to a depth of d to determine the best move for a player
 	 * @param b - the game board
@@ -21,68 +52,293 @@ public class GTN {
 	 * @param d - the depth to search the game tree
 	 */
 	public GTN(Board b, int l, int d) {
+		this(b, l, d, new SearchContext(b.columnsOnBoard()));
+	}
+	/**
+	 * Creates, traverses, and evaluates the game tree to a depth of d to determine the best move for a player
+	 * Reusing a context between searches lets each search start with the move ordering learned by the previous ones
+	 * @param b - the game board
+	 * @param l - the current level of the game tree
+	 * @param d - the depth to search the game tree
+	 * @param c - the context holding the move ordering data for the search
+	 */
+	public GTN(Board b, int l, int d, SearchContext c) {
 		AI_DIFFICULTY = d;
 		_game = b;
+		_context = c;
 		_logicLevel = l;
 		_bestMove = -1;
-		boolean gameOver = false;
-		int gameVal = _game.evaluate();
-		if(_game.lastPiece().toString().equals("P1")) {
-			if(gameVal == P1_WIN)
-				gameOver = true;
-			_bestMoveValue = P1_WIN;
+		if(_logicLevel != AI_DIFFICULTY && !_game.gameWon() && !_game.fullBoard()) {
+			if(!lookUp() && !solve())
+				searchRoot();
 		}
-		else {
-			if(gameVal == P2_WIN)
-				gameOver = true;
-			_bestMoveValue = P2_WIN;
+		else
+			_bestMoveValue = _game.evaluate();
+	}
+	//takes the best move from the opening book if the board is in it, returning true if it was
+	private boolean lookUp() {
+		OpeningBook book = _context.book();
+		if(book == null || !book.fits(_game) || _game.piecesPlayed() >= book.plies())
+			return false;
+		int move = book.bestMove(_game);
+		if(move < 0)
+			return false;
+		_bestMove = move;
+		_bestMoveValue = book.score(_game);
+		_fromBook = true;
+		return true;
+	}
+	//plays perfectly using the database or the solver if the board is close enough to the end of the game, returning true if one was used
+	//the value of the move is a win for whoever wins with perfect play, or 0 for a draw
+	private boolean solve() {
+		SolvedDatabase database = _context.databaseFor(_game);
+		if(database != null) {
+			_bestMove = database.bestMove(_game);
+			int value = database.value(_game);
+			if(value == SolvedDatabase.DRAW)
+				_bestMoveValue = 0;
+			else
+				_bestMoveValue = (value == SolvedDatabase.WIN) == p1ToMove() ? P1_WIN : P2_WIN;
+			_solved = true;
+			return true;
 		}
-		if(_logicLevel != AI_DIFFICULTY && !gameOver && !_game.fullBoard()) 
-			findBestMove();
+		Solver solver = _context.solverFor(_game);
+		if(solver == null)
+			return false;
+		_bestMove = solver.bestMove(_game, _context);//stops with the context, like a search would
+		int score = solver.lastScore();//positive if the player moving wins
+		if(score == 0)
+			_bestMoveValue = 0;
 		else
-			_bestMoveValue = gameVal;
+			_bestMoveValue = (score > 0) == p1ToMove() ? P1_WIN : P2_WIN;
+		_solved = true;
+		return true;
 	}
-	//evaluates all the children of the current node by placing a piece on the board, evaluating, then removing it,
-	//and updates the best move based on the best child
+	//searches the tree from this node, keeping count of the work done
+	private void searchRoot() {
+		SearchEvent event = new SearchEvent();
+		event.begin();
+		long start = System.nanoTime();
+		long nodes = _context.totalNodes();
+		TranspositionTable table = _context.table();
+		long hits = table == null ? 0 : table.hits();
+		_context.prepare(AI_DIFFICULTY - _logicLevel);
+		findBestMove();
+		_nanos = System.nanoTime() - start;
+		_nodes = _context.totalNodes() - nodes;
+		if(table != null)
+			_tableHits = table.hits() - hits;
+		event.end();
+		if(event.shouldCommit()) {
+			event.depth = AI_DIFFICULTY - _logicLevel;
+			event.piecesPlayed = _game.piecesPlayed();
+			event.nodes = _nodes;
+			event.leaves = _leaves;
+			event.cutoffs = _cutoffs;
+			event.maxPly = _maxPly;
+			event.tableHits = _tableHits;
+			event.bestMove = _bestMove;
+			event.value = _bestMoveValue;
+			event.stopped = _context.stopped();
+			event.commit();
+		}
+	}
+	//evaluates every move at the root of the tree and keeps the best one
+	//each move is searched with a window just wide enough to tell whether it is at least as good as the best so far,
+	//so ties are broken exactly the way a full minimax search going through the columns in order would break them
 	private void findBestMove() {
-		GTN nextChild;
-		for(int col = 0; col < _game.columnsOnBoard(); col++) {
-			if(_game.isFull(col))
+		boolean p1Turn = p1ToMove();
+		TranspositionTable table = _context.table();
+		int hint = -1;
+		if(table != null)
+			hint = tableCol(TranspositionTable.move(table.probe(tableKey())));
+		int count = _context.orderMoves(_game, 0, p1Turn, hint);
+		int[] moves = _context.moves(0);
+		_bestMoveValue = p1Turn ? P2_WIN : P1_WIN;
+		for(int i = 0; i < count; i++) {
+			int col = moves[i];
+			if(_bestMove != -1 && _bestMoveValue == win(p1Turn) && col > _bestMove)
+				continue;//can't beat a win in an earlier column
+			_game.place(p1Turn ? Piece.P1 : Piece.P2, col);
+			int value;
+			if(p1Turn)
+				value = search(_logicLevel + 1, _bestMoveValue == P2_WIN ? P2_WIN : _bestMoveValue - 1, P1_WIN);
+			else
+				value = search(_logicLevel + 1, P2_WIN, _bestMoveValue == P1_WIN ? P1_WIN : _bestMoveValue + 1);
+			_game.undo();
+			if(_context.stopped())
+				return;
+			if(_bestMove == -1 || preferred(value, col, _bestMoveValue, _bestMove, p1Turn)) {
+				_bestMoveValue = value;
+				_bestMove = col;
+			}
+		}
+		if(table != null)
+			table.store(tableKey(), AI_DIFFICULTY - _logicLevel, _bestMoveValue, tableCol(_bestMove), TranspositionTable.EXACT);
+	}
+	//returns the value of the board searched to the bottom of the tree,
+	//or a bound on it if the value is outside the window from alpha to beta
+	//the tree is walked with a loop instead of recursion, keeping the state of each node in the context's frame for its ply
+	private int search(int level, int alpha, int beta) {
+		int top = level - _logicLevel;
+		int ply = top;
+		boolean descend = open(ply, alpha, beta);
+		while(true) {
+			if(descend) {//search the next move of the node at this ply
+				int[] frame = _context.frame(ply);
+				_game.place(p1ToMove() ? Piece.P1 : Piece.P2, _context.moves(ply)[frame[NEXT]]);
+				ply++;
+				descend = open(ply, frame[ALPHA], frame[BETA]);
+				continue;
+			}
+			//_value holds the value of the node at this ply, so hand it back to the node above
+			if(ply == top)
+				return _value;
+			ply--;
+			_game.undo();
+			if(_context.stopped()) {
+				_value = 0;//out of time, the result will be thrown away
 				continue;
-			nextChild = makeChild(col);
-			if(_logicLevel%2 == 0) {//children have P2 placements, ie. it's the computer's move
-				if(_bestMoveValue >= nextChild.evaluate()) {
-					_bestMoveValue = nextChild.evaluate();
-					_bestMove = col;
-					if(_bestMoveValue == P2_WIN) {//guaranteed to be the best move
-						_game.undo();
-						break;
-					}
-				}
 			}
-			else {
-				if(_bestMoveValue <= nextChild.evaluate()) {//it's the player's move
-					_bestMoveValue = nextChild.evaluate();
-					_bestMove = col;
-					if(_bestMoveValue == P1_WIN) {//guaranteed to be the best move
-						_game.undo();
-						break;
-					}
+			descend = next(ply, _value);
+		}
+	}
+	//starts searching the board as the node at the ply, returning true if its moves need searching
+	//otherwise the value of the node, or a bound on it if the value is outside the window from alpha to beta, is left in _value
+	private boolean open(int ply, int alpha, int beta) {
+		if(_context.countNode()) {
+			_value = 0;//out of time, the result will be thrown away
+			return false;
+		}
+		int level = _logicLevel + ply;
+		int threat = judgeThreats();
+		if(threat != 0 || level == AI_DIFFICULTY || _game.gameWon() || _game.fullBoard()) {//a win proved by the threats needs no more searching
+			_leaves++;
+			if(ply > _maxPly)
+				_maxPly = ply;
+			_value = threat != 0 ? threat : _game.evaluate();
+			return false;
+		}
+		int depth = AI_DIFFICULTY - level;
+		TranspositionTable table = _context.table();
+		int hint = -1;
+		if(table != null) {
+			long entry = table.probe(tableKey());
+			if(entry != 0) {
+				hint = tableCol(TranspositionTable.move(entry));
+				if(TranspositionTable.depth(entry) >= depth) {//searched at least as deep as needed, so the score can be used
+					int score = TranspositionTable.score(entry);
+					int bound = TranspositionTable.bound(entry);
+					_value = score;
+					if(bound == TranspositionTable.EXACT)
+						return false;
+					if(bound == TranspositionTable.LOWER && score > alpha)
+						alpha = score;
+					else if(bound == TranspositionTable.UPPER && score < beta)
+						beta = score;
+					if(alpha >= beta)
+						return false;
 				}
 			}
-			_game.undo();
 		}
+		boolean p1Turn = p1ToMove();
+		int count = _context.orderMoves(_game, ply, p1Turn, hint);
+		count = _context.pruneMoves(_game, ply, count, p1Turn, depth);
+		int[] frame = _context.frame(ply);
+		frame[ALPHA] = frame[WINDOW_ALPHA] = alpha;
+		frame[BETA] = frame[WINDOW_BETA] = beta;
+		frame[BEST] = p1Turn ? P2_WIN : P1_WIN;
+		frame[BEST_COL] = _context.moves(ply)[0];
+		frame[NEXT] = 0;
+		frame[COUNT] = count;
+		return count > 0 || close(ply);
 	}
-	//creates and returns the child created by placing in col on the current board
-	private GTN makeChild(int col) {
-		if(_game.isFull(col))
-			return null;
-		if(_game.lastPiece().toString().equals("P1"))
-			_game.place(new Player2(), col);
-		else
-			_game.place(new Player1(), col);
-		GTN child = new GTN(_game, _logicLevel +1, AI_DIFFICULTY);
-		return child;
+	//takes the value of the move just searched by the node at the ply, returning true if it has more moves to search
+	//otherwise the node is finished and its value is left in _value
+	private boolean next(int ply, int value) {
+		int[] frame = _context.frame(ply);
+		int col = _context.moves(ply)[frame[NEXT]];
+		boolean p1Turn = p1ToMove();
+		if(p1Turn) {//the player's move
+			if(value > frame[BEST]) {
+				frame[BEST] = value;
+				frame[BEST_COL] = col;
+			}
+			if(frame[BEST] > frame[ALPHA])
+				frame[ALPHA] = frame[BEST];
+		}
+		else {//the computer's move
+			if(value < frame[BEST]) {
+				frame[BEST] = value;
+				frame[BEST_COL] = col;
+			}
+			if(frame[BEST] < frame[BETA])
+				frame[BETA] = frame[BEST];
+		}
+		if(frame[ALPHA] >= frame[BETA]) {//the other player will never allow this position
+			_context.cutoff(ply, col, p1Turn, AI_DIFFICULTY - _logicLevel - ply);
+			_cutoffs++;
+			return close(ply);
+		}
+		return ++frame[NEXT] < frame[COUNT] || close(ply);
+	}
+	//finishes the node at the ply, storing its value in the transposition table and leaving it in _value, and returns false
+	private boolean close(int ply) {
+		int[] frame = _context.frame(ply);
+		int best = frame[BEST];
+		TranspositionTable table = _context.table();
+		if(table != null) {
+			int bound = TranspositionTable.EXACT;
+			if(best <= frame[WINDOW_ALPHA])
+				bound = TranspositionTable.UPPER;
+			else if(best >= frame[WINDOW_BETA])
+				bound = TranspositionTable.LOWER;
+			table.store(tableKey(), AI_DIFFICULTY - _logicLevel - ply, best, tableCol(frame[BEST_COL]), bound);
+		}
+		_value = best;
+		return false;
+	}
+	//returns the value of a win for the player who just moved if the context's threat analysis proves it, otherwise 0
+	private int judgeThreats() {
+		ThreatAnalysis threats = _context.threatsFor(_game);
+		if(threats == null || _game.gameWon() || threats.analyze(_game) != ThreatAnalysis.LOSS)
+			return 0;
+		return _game.lastPiece() == Piece.P1 ? P1_WIN : P2_WIN;
+	}
+	//returns the key the board is stored under in the transposition table, which is the same for a board and its mirror image
+	private long tableKey() {
+		return Math.min(_game.hash(), _game.mirrorHash());
+	}
+	//converts a column between the board and the transposition table, which stores mirrored boards flipped
+	private int tableCol(int col) {
+		if(col < 0 || _game.hash() <= _game.mirrorHash())
+			return col;
+		return _game.columnsOnBoard() - 1 - col;
+	}
+	//returns true if Player1 places the next piece
+	private boolean p1ToMove() {
+		return _game.lastPiece() != Piece.P1;
+	}
+	//returns the value of a win for the player moving
+	private static int win(boolean p1Turn) {
+		return p1Turn ? P1_WIN : P2_WIN;
+	}
+	/**
+	 * Decides between two moves the same way a minimax search going through the columns in order does:
+	 * the better value wins, the first column wins between two wins, and the last column wins any other tie
+	 * @param value - the value of the new move
+	 * @param col - the column of the new move
+	 * @param bestValue - the value of the best move so far
+	 * @param bestCol - the column of the best move so far
+	 * @param p1Turn - true if Player1 is the one moving
+	 * @return - true if the new move should replace the best move
+	 */
+	static boolean preferred(int value, int col, int bestValue, int bestCol, boolean p1Turn) {
+		if(value != bestValue)
+			return p1Turn ? value > bestValue : value < bestValue;
+		if(value == win(p1Turn))
+			return col < bestCol;
+		return col > bestCol;
 	}
 	/**
 	 * @return - the value of the best move this node can make
@@ -90,6 +346,48 @@ public class GTN {
 	public int evaluate() {
 		return _bestMoveValue;
 	}
+	/**
+	 * @return - true if the best move came from the opening book instead of a search
+	 */
+	public boolean fromBook() {
+		return _fromBook;
+	}
+	/**
+	 * @return - true if the best move came from the solver, in which case it is the perfect move
+	 */
+	public boolean solved() {
+		return _solved;
+	}
+	/**
+	 * @return - what the search of this node did, all 0 if the move came from the opening book or solver, or this node is a leaf
+	 */
+	public SearchStats stats() {
+		return new SearchStats(AI_DIFFICULTY - _logicLevel, _nodes, _leaves, _cutoffs, _maxPly, _tableHits, _nanos);
+	}
+	/**
+	 * Follows the best moves stored in the transposition table from this node, giving the line of play the search expects
+	 * The line can be cut short if an entry along it was replaced by another position.
+	 * @param maxLength - the most moves to return
+	 * @return - the best move of this node followed by the best reply to it and so on, empty if there is no best move
+	 */
+	public int[] principalVariation(int maxLength) {
+		TranspositionTable table = _context.table();
+		int[] line = new int[maxLength];
+		int length = 0;
+		int move = _bestMove;
+		while(length < maxLength && move >= 0 && move < _game.columnsOnBoard() && !_game.gameWon() && !_game.fullBoard()) {
+			if(!_game.place(_game.lastPiece().next(), move))
+				break;
+			line[length++] = move;
+			if(table == null)
+				break;
+			long entry = table.probe(tableKey());
+			move = entry == 0 ? -1 : tableCol(TranspositionTable.move(entry));
+		}
+		for(int i = 0; i < length; i++)
+			_game.undo();
+		return Arrays.copyOf(line, length);
+	}
 	/**
 	 * @return - the move with the best value for this node
 	 */
@@ -0,0 +1,174 @@
+package code;
+import java.nio.ByteBuffer;
+
+/**
+ * A finished or unfinished game stored as the columns played and the result, in as few bytes as possible
+ * A record is a 2 byte header holding the result in the top 2 bits and the number of moves in the other 14,
+ * followed by the moves packed 3 bits each, so only boards with up to 8 columns can be recorded.
+ * A full game on the standard board takes 18 bytes, and most games take less.
+ * @author Zach Kemphues
+ */
+public class GameRecord {
+	public static final int UNFINISHED = 0;
+	public static final int P1_WON = 1;
+	public static final int P2_WON = 2;
+	public static final int DRAW = 3;
+	/** The most columns a board can have to be recorded */
+	public static final int MAX_COLUMNS = 8;
+	private static final int MOVE_BITS = 3;
+	private static final int HEADER_SIZE = 2;
+	private static final int MAX_MOVES = (1 << 14) - 1;
+
+	private int[] _moves;
+	private int _result;
+
+	/**
+	 * Records the game played on a board so far
+	 * @param b - the board, with at most MAX_COLUMNS columns
+	 */
+	public GameRecord(Board b) {
+		if(b.columnsOnBoard() > MAX_COLUMNS)
+			throw new IllegalArgumentException("Only boards with up to " + MAX_COLUMNS + " columns can be recorded");
+		_moves = new int[b.piecesPlayed()];
+		for(int i = 0; i < _moves.length; i++)
+			_moves[i] = b.moveAt(i);
+		if(b.gameWon())
+			_result = b.lastPiece() == Piece.P1 ? P1_WON : P2_WON;
+		else if(b.fullBoard())
+			_result = DRAW;
+		else
+			_result = UNFINISHED;
+	}
+	/**
+	 * Creates a record from its moves and result
+	 * @param moves - the column played on each turn
+	 * @param result - UNFINISHED, P1_WON, P2_WON or DRAW
+	 */
+	public GameRecord(int[] moves, int result) {
+		if(moves.length > MAX_MOVES)
+			throw new IllegalArgumentException("A game can have at most " + MAX_MOVES + " moves");
+		for(int col : moves) {
+			if(col < 0 || col >= MAX_COLUMNS)
+				throw new IllegalArgumentException("Column " + col + " can't be recorded");
+		}
+		if(result < UNFINISHED || result > DRAW)
+			throw new IllegalArgumentException("Unknown result " + result);
+		_moves = moves.clone();
+		_result = result;
+	}
+	/**
+	 * @return - the column played on each turn
+	 */
+	public int[] moves() {
+		return _moves.clone();
+	}
+	/**
+	 * @return - the number of moves in the game
+	 */
+	public int length() {
+		return _moves.length;
+	}
+	/**
+	 * @param turn - the turn, counting from 0
+	 * @return - the column played on that turn
+	 */
+	public int moveAt(int turn) {
+		return _moves[turn];
+	}
+	/**
+	 * @return - UNFINISHED, P1_WON, P2_WON or DRAW
+	 */
+	public int result() {
+		return _result;
+	}
+	/**
+	 * Plays the game on a new board
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param winLength - the number of pieces in a row needed to win
+	 * @param turns - the number of moves to play, at most length()
+	 * @return - the board after the moves
+	 */
+	public Board replay(int cols, int rows, int winLength, int turns) {
+		Board b = new Board(cols, rows, winLength);
+		for(int i = 0; i < turns; i++) {
+			if(_moves[i] >= cols || !b.place(b.lastPiece().next(), _moves[i]))
+				throw new IllegalStateException("Move " + i + " of the game can't be played in column " + _moves[i]);
+		}
+		return b;
+	}
+	/**
+	 * @return - the number of bytes the record takes when written
+	 */
+	public int size() {
+		return size(_moves.length);
+	}
+	//returns the size of a record with the given number of moves
+	private static int size(int moves) {
+		return HEADER_SIZE + (moves*MOVE_BITS + 7)/8;
+	}
+	/**
+	 * Writes the record into a buffer
+	 * @param buf - the buffer, with at least size() bytes remaining
+	 */
+	public void write(ByteBuffer buf) {
+		buf.putShort((short)(_result << 14 | _moves.length));
+		int bits = 0; //moves waiting to be written, lowest bits first
+		int count = 0; //the number of bits waiting
+		for(int col : _moves) {
+			bits |= col << count;
+			count += MOVE_BITS;
+			if(count >= 8) {
+				buf.put((byte)bits);
+				bits >>>= 8;
+				count -= 8;
+			}
+		}
+		if(count > 0)
+			buf.put((byte)bits);
+	}
+	/**
+	 * Reads a record written by write()
+	 * @param buf - the buffer holding the record
+	 * @param offset - the index of the first byte of the record
+	 * @return - the record
+	 */
+	public static GameRecord read(ByteBuffer buf, int offset) {
+		int header = buf.getShort(offset) & 0xFFFF;
+		GameRecord g = new GameRecord(new int[0], header >>> 14);
+		g._moves = new int[header & MAX_MOVES];
+		int pos = offset + HEADER_SIZE;
+		int bits = 0;
+		int count = 0;
+		for(int i = 0; i < g._moves.length; i++) {
+			if(count < MOVE_BITS) {
+				bits |= (buf.get(pos++) & 0xFF) << count;
+				count += 8;
+			}
+			g._moves[i] = bits & (1 << MOVE_BITS) - 1;
+			bits >>>= MOVE_BITS;
+			count -= MOVE_BITS;
+		}
+		return g;
+	}
+	/**
+	 * Finds the size of a record without reading its moves, so records can be skipped over quickly
+	 * @param buf - the buffer holding the record
+	 * @param offset - the index of the first byte of the record
+	 * @return - the number of bytes the record takes
+	 */
+	public static int sizeAt(ByteBuffer buf, int offset) {
+		return size(buf.getShort(offset) & MAX_MOVES);
+	}
+	/**
+	 * @return - the moves as digits followed by the result, eg. "3323 unfinished"
+	 */
+	@Override
+	public String toString() {
+		String s = "";
+		for(int col : _moves)
+			s += col;
+		String[] results = {"unfinished", "Player1 won", "Player2 won", "draw"};
+		return s + " " + results[_result];
+	}
+}
@@ -0,0 +1,375 @@
+package code;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A file of GameRecords that games are only ever added to, read through a memory-mapped view of the file
+ * The file is a header giving the size of the board followed by the records one after another, and a game is found by the offset of its record.
+ * Games added are buffered until flush() or close(), and a record cut off by a crash is dropped the next time the file is opened.
+ * An index of the positions reached in the first few moves of every game can be built with buildIndex(), and is kept in a
+ * second file next to the store.  It is sorted by position key, so finding the games that reached a position is a binary search,
+ * the same as OpeningBook.  Positions that are mirror images of each other share one key.
+ * The store can only hold boards that fit in one bitboard with up to 8 columns, and the mapped file is limited to 2GB,
+ * over 100 million standard games.
+ * @author Zach Kemphues
+ */
+public class GameStore implements Closeable {
+	private static final int MAGIC = 0x43344753;//"C4GS"
+	private static final int INDEX_MAGIC = 0x43344749;//"C4GI"
+	private static final int HEADER_SIZE = 16;//magic, columns, rows and win length
+	private static final int INDEX_HEADER_SIZE = 20;//magic, plies, the length of the store covered and number of entries
+	private static final int INDEX_ENTRY_SIZE = 12;//position key and record offset
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** The number of moves of each game indexed unless another number is given */
+	public static final int DEFAULT_INDEX_PLIES = 8;
+
+	private final File FILE;
+	private final File INDEX_FILE;
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int WIN_LENGTH;
+	private RandomAccessFile _file;
+	private FileChannel _channel;
+	private ByteBuffer _pending; //records added but not yet written to the file
+	private long _length; //the length of the file, not counting pending records
+	private int _count; //the number of games, including pending ones
+	private MappedByteBuffer _map; //the file as of the last time it was mapped
+	private MappedByteBuffer _index; //the index file, or null if there is not an up to date one
+	private int _indexPlies;
+	private int _indexCount;
+
+	/**
+	 * Opens a store, creating it if the file does not exist
+	 * @param f - the store file
+	 * @param cols - the number of columns on the board, at most GameRecord.MAX_COLUMNS
+	 * @param rows - the number of rows on the board
+	 * @param winLength - the number of pieces in a row needed to win
+	 * @throws IOException - if the file cannot be opened, is not a store or is for a different board
+	 */
+	public GameStore(File f, int cols, int rows, int winLength) throws IOException {
+		if(cols > GameRecord.MAX_COLUMNS || !new Board(cols, rows, winLength).compact())
+			throw new IllegalArgumentException("A " + cols + "x" + rows + " board can't be stored");
+		FILE = f;
+		INDEX_FILE = new File(f.getPath() + ".idx");
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		WIN_LENGTH = winLength;
+		_file = new RandomAccessFile(f, "rw");
+		_channel = _file.getChannel();
+		_pending = ByteBuffer.allocate(BUFFER_SIZE);
+		if(_channel.size() == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(cols).putInt(rows).putInt(winLength).flip();
+			_channel.write(header, 0);
+		}
+		_length = _channel.size();
+		map();
+		if(_length < HEADER_SIZE || _map.getInt(0) != MAGIC) {
+			close();
+			throw new IOException(f + " is not a game store");
+		}
+		if(_map.getInt(4) != cols || _map.getInt(8) != rows || _map.getInt(12) != winLength) {
+			close();
+			throw new IOException(f + " holds games for a different board");
+		}
+		//count the games, dropping a record that was only partly written
+		int offset = HEADER_SIZE;
+		while(offset + 2 <= _length && offset + GameRecord.sizeAt(_map, offset) <= _length) {
+			offset += GameRecord.sizeAt(_map, offset);
+			_count++;
+		}
+		if(offset < _length) {
+			_map = null;
+			_file.setLength(offset);
+			_length = offset;
+			map();
+		}
+		openIndex();
+	}
+	//maps the whole file, checking it is small enough to be mapped
+	private void map() throws IOException {
+		if(_length > Integer.MAX_VALUE)
+			throw new IOException(FILE + " is too big to be mapped");
+		_map = _channel.map(FileChannel.MapMode.READ_ONLY, 0, _length);
+	}
+	//maps the index file if it exists and covers every game in the store
+	private void openIndex() throws IOException {
+		_index = null;
+		if(!INDEX_FILE.exists())
+			return;
+		RandomAccessFile f = new RandomAccessFile(INDEX_FILE, "r");
+		try {
+			FileChannel channel = f.getChannel();
+			if(channel.size() < INDEX_HEADER_SIZE)
+				return;
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(index.getInt(0) != INDEX_MAGIC || index.getLong(8) != _length + _pending.position())
+				return;//left over from another store, or games were added since it was built
+			_indexPlies = index.getInt(4);
+			_indexCount = index.getInt(16);
+			if(channel.size() != INDEX_HEADER_SIZE + (long)_indexCount*INDEX_ENTRY_SIZE)
+				return;
+			_index = index;
+		} finally {
+			f.close();//the mapping stays valid after the file is closed
+		}
+	}
+	/**
+	 * Adds a game to the end of the store
+	 * @param g - the game, played on a board the size of the store's
+	 * @return - the offset of the game's record, which game() reads it back from
+	 * @throws IOException - if the store cannot be written
+	 */
+	public int add(GameRecord g) throws IOException {
+		if(_pending.remaining() < g.size())
+			flush();
+		long offset = _length + _pending.position();
+		if(offset + g.size() > Integer.MAX_VALUE)
+			throw new IOException(FILE + " is full");
+		g.write(_pending);
+		_count++;
+		_index = null;//no longer covers every game
+		return (int)offset;
+	}
+	/**
+	 * Writes the games added so far to the file
+	 * @throws IOException - if the store cannot be written
+	 */
+	public void flush() throws IOException {
+		if(_pending.position() == 0)
+			return;
+		_pending.flip();
+		while(_pending.hasRemaining())
+			_length += _channel.write(_pending, _length);
+		_pending.clear();
+	}
+	//makes sure the mapped view includes every game added
+	private void refresh() throws IOException {
+		flush();
+		if(_map.capacity() != _length)
+			map();
+	}
+	/**
+	 * @return - the number of games in the store
+	 */
+	public int size() {
+		return _count;
+	}
+	/**
+	 * Reads a game back from the store
+	 * @param offset - the offset returned by add() or gamesReaching()
+	 * @return - the game
+	 * @throws IOException - if the store cannot be read
+	 */
+	public GameRecord game(int offset) throws IOException {
+		refresh();
+		if(offset < HEADER_SIZE || offset >= _length)
+			throw new IndexOutOfBoundsException("No game at offset " + offset);
+		return GameRecord.read(_map, offset);
+	}
+	/**
+	 * Reads every game in the order they were added, straight from the mapped file
+	 * @param visitor - called with each game
+	 * @throws IOException - if the store cannot be read
+	 */
+	public void forEach(Consumer<GameRecord> visitor) throws IOException {
+		refresh();
+		for(int offset = HEADER_SIZE; offset < _length; offset += GameRecord.sizeAt(_map, offset))
+			visitor.accept(GameRecord.read(_map, offset));
+	}
+	/**
+	 * Indexes the positions reached in the first moves of every game, replacing any older index
+	 * Every indexed position is held in memory while the index is sorted, 12 bytes each.
+	 * @param plies - the number of moves of each game to index
+	 * @throws IOException - if the index cannot be written
+	 */
+	public void buildIndex(int plies) throws IOException {
+		refresh();
+		int entries = 0;
+		for(int offset = HEADER_SIZE; offset < _length; offset += GameRecord.sizeAt(_map, offset))
+			entries += Math.min(plies, GameRecord.read(_map, offset).length());
+		long[] keys = new long[entries];
+		int[] offsets = new int[entries];
+		int n = 0;
+		for(int offset = HEADER_SIZE; offset < _length; offset += GameRecord.sizeAt(_map, offset)) {
+			int moves = positionKeys(GameRecord.read(_map, offset), plies, keys, n);
+			for(int i = 0; i < moves; i++)
+				offsets[n++] = offset;
+		}
+		sort(keys, offsets, new long[entries], new int[entries], 0, entries);
+
+		_index = null;
+		RandomAccessFile f = new RandomAccessFile(INDEX_FILE, "rw");
+		try {
+			f.setLength(0);
+			FileChannel channel = f.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			buf.putInt(INDEX_MAGIC).putInt(plies).putLong(_length).putInt(entries);
+			for(int i = 0; i < entries; i++) {
+				if(buf.remaining() < INDEX_ENTRY_SIZE) {
+					buf.flip();
+					channel.write(buf);
+					buf.clear();
+				}
+				buf.putLong(keys[i]).putInt(offsets[i]);
+			}
+			buf.flip();
+			channel.write(buf);
+		} finally {
+			f.close();
+		}
+		openIndex();
+	}
+	//stores the key of the position after each of the first plies moves of a game in keys, starting at keys[start], returning how many there were
+	//the smaller of Board.positionKey() and Board.mirrorPositionKey() is worked out straight from the moves, which is much faster than playing them on a Board
+	private int positionKeys(GameRecord g, int plies, long[] keys, int start) {
+		int colBits = NUM_ROWS + 1;
+		long bottom = 0;
+		for(int c = 0; c < NUM_COLS; c++)
+			bottom |= 1L << c*colBits;
+		long p1 = 0; //Player1's pieces, and everyone's, on the board and its mirror image
+		long all = 0;
+		long mirrorP1 = 0;
+		long mirrorAll = 0;
+		int moves = Math.min(plies, g.length());
+		for(int i = 0; i < moves; i++) {
+			int col = g.moveAt(i);
+			long bit = (all + (1L << col*colBits)) & ~all & (((1L << colBits) - 1) << col*colBits);//the lowest empty cell in the column
+			long mirrorBit = (mirrorAll + (1L << (NUM_COLS - 1 - col)*colBits)) & ~mirrorAll & (((1L << colBits) - 1) << (NUM_COLS - 1 - col)*colBits);
+			all |= bit;
+			mirrorAll |= mirrorBit;
+			if(i%2 == 0) {
+				p1 |= bit;
+				mirrorP1 |= mirrorBit;
+			}
+			keys[start + i] = Math.min(p1 | (all + bottom), mirrorP1 | (mirrorAll + bottom));
+		}
+		return moves;
+	}
+	//sorts keys[from..to) with the offsets alongside them, keeping entries with the same key in order of offset
+	private static void sort(long[] keys, int[] offsets, long[] keyTemp, int[] offsetTemp, int from, int to) {
+		if(to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		sort(keys, offsets, keyTemp, offsetTemp, from, mid);
+		sort(keys, offsets, keyTemp, offsetTemp, mid, to);
+		if(keys[mid - 1] <= keys[mid])
+			return;//already in order
+		int i = from;
+		int j = mid;
+		for(int k = from; k < to; k++) {
+			if(j >= to || (i < mid && keys[i] <= keys[j])) {
+				keyTemp[k] = keys[i];
+				offsetTemp[k] = offsets[i++];
+			}
+			else {
+				keyTemp[k] = keys[j];
+				offsetTemp[k] = offsets[j++];
+			}
+		}
+		System.arraycopy(keyTemp, from, keys, from, to - from);
+		System.arraycopy(offsetTemp, from, offsets, from, to - from);
+	}
+	/**
+	 * @return - the number of moves of each game the index covers, or 0 if there is no index covering every game
+	 */
+	public int indexedPlies() {
+		return _index == null ? 0 : _indexPlies;
+	}
+	/**
+	 * Finds the games that reached a position, or its mirror image
+	 * Uses the index if it covers the position, otherwise every game is replayed to check.
+	 * @param b - the position, on a board the size of the store's
+	 * @return - the offsets of the games, in the order they were added
+	 * @throws IOException - if the store cannot be read
+	 */
+	public int[] gamesReaching(Board b) throws IOException {
+		if(b.columnsOnBoard() != NUM_COLS || b.rowsOnBoard() != NUM_ROWS)
+			throw new IllegalArgumentException("The store holds games on a " + NUM_COLS + "x" + NUM_ROWS + " board");
+		refresh();
+		long key = Math.min(b.positionKey(), b.mirrorPositionKey());
+		int plies = b.piecesPlayed();
+		if(_index != null && plies > 0 && plies <= _indexPlies) {
+			int low = 0;
+			int high = _indexCount;
+			while(low < high) {//find the first entry with the key
+				int mid = (low + high) >>> 1;
+				if(_index.getLong(INDEX_HEADER_SIZE + mid*INDEX_ENTRY_SIZE) < key)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			int end = low;
+			while(end < _indexCount && _index.getLong(INDEX_HEADER_SIZE + end*INDEX_ENTRY_SIZE) == key)
+				end++;
+			int[] games = new int[end - low];
+			for(int i = low; i < end; i++)
+				games[i - low] = _index.getInt(INDEX_HEADER_SIZE + i*INDEX_ENTRY_SIZE + 8);
+			return games;
+		}
+		int[] games = new int[16];
+		int n = 0;
+		long[] reached = new long[plies];
+		for(int offset = HEADER_SIZE; offset < _length; offset += GameRecord.sizeAt(_map, offset)) {
+			GameRecord g = GameRecord.read(_map, offset);
+			if(g.length() < plies)
+				continue;
+			if(plies == 0 || (positionKeys(g, plies, reached, 0) == plies && reached[plies - 1] == key)) {
+				if(n == games.length)
+					games = Arrays.copyOf(games, 2*n);
+				games[n++] = offset;
+			}
+		}
+		return Arrays.copyOf(games, n);
+	}
+	/**
+	 * Writes any games still waiting and closes the store
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			_map = null;
+			_index = null;
+			_file.close();
+		}
+	}
+
+	/**
+	 * Prints how many games in a store of standard games reached a position, and how they ended
+	 * @param args - the store file, then optionally the position as the columns played counting from 0, eg. "3323",
+	 *               and "index" to build the index first
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: GameStore <store file> [moves] [index]");
+			return;
+		}
+		GameStore store = new GameStore(new File(args[0]), 7, 6, Board.DEFAULT_WIN_LENGTH);
+		try {
+			if(args.length > 2 && args[2].equals("index"))
+				store.buildIndex(DEFAULT_INDEX_PLIES);
+			Board b = new Board();
+			if(args.length > 1) {
+				for(char c : args[1].toCharArray())
+					b.place(b.lastPiece().next(), c - '0');
+			}
+			int[] games = store.gamesReaching(b);
+			int[] results = new int[4];
+			for(int offset : games)
+				results[store.game(offset).result()]++;
+			System.out.println(games.length + " of " + store.size() + " games reached the position: " + results[GameRecord.P1_WON] + " won by Player1, " +
+					results[GameRecord.P2_WON] + " by Player2, " + results[GameRecord.DRAW] + " drawn and " + results[GameRecord.UNFINISHED] + " unfinished");
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package code;
+
+/**
+ * An AI player that searches the game tree one ply deeper at a time until it runs out of time or nodes,
+ * so that it answers within a predictable amount of time however complicated the board is
+ * Each search leaves its results in the transposition table, so the next one tries the best moves found so far first.
+ * The move played is the best move from the deepest search that finished.
+ * A move that wins right away or is the only way to avoid losing on the next move is played after searching just two plies.
+ * A listener can follow the search as each depth finishes, and another thread can cancel it with cancel().
+ * @author Zach Kemphues
+ */
+public class IterativeDeepening implements Engine {
+	private final long TIME_BUDGET;
+	private final long NODE_BUDGET;
+	private final int MAX_DEPTH;
+
+	private SearchContext _context;
+	private int _depthReached;
+	private int _value;
+	private SearchListener _listener;
+	private GTN _tree; //the deepest search that finished for the last move
+	private SearchStats[] _iterations; //the stats of each depth searched for the last move
+	private int _iterationCount;
+	private boolean _shortcut; //true if the last move came from the book, solver or database, or was forced, instead of a real search
+	private long _search; //counts the moves chosen, so a cancel() only stops the search it came in during
+	private volatile long _cancelled; //the search cancel() was last called during
+
+	/**
+	 * Creates an AI player with its own search context
+	 * @param cols - the number of columns on the boards that will be searched
+	 * @param millis - the number of milliseconds each move may take, or 0 for no limit
+	 * @param nodes - the number of nodes each move may search, or 0 for no limit
+	 * @param maxDepth - the deepest search to try, or 0 to keep going until the end of the game
+	 */
+	public IterativeDeepening(int cols, long millis, long nodes, int maxDepth) {
+		this(new SearchContext(cols), millis, nodes, maxDepth);
+	}
+	/**
+	 * Creates an AI player that searches using the given context
+	 * The context should have a transposition table, since that is how each search learns from the previous one
+	 * @param c - the context to search with
+	 * @param millis - the number of milliseconds each move may take, or 0 for no limit
+	 * @param nodes - the number of nodes each move may search, or 0 for no limit
+	 * @param maxDepth - the deepest search to try, or 0 to keep going until the end of the game
+	 */
+	public IterativeDeepening(SearchContext c, long millis, long nodes, int maxDepth) {
+		_context = c;
+		TIME_BUDGET = millis;
+		NODE_BUDGET = nodes;
+		MAX_DEPTH = maxDepth;
+		_iterations = new SearchStats[0];
+	}
+
+	@Override
+	public int bestMove(Board b) {
+		long start = System.nanoTime();
+		int maxDepth = b.rowsOnBoard()*b.columnsOnBoard() - b.piecesPlayed();//no point searching past the end of the game
+		if(MAX_DEPTH > 0 && MAX_DEPTH < maxDepth)
+			maxDepth = MAX_DEPTH;
+		
+		//one ply is always searched in full so there is a legal move to play, it is too few nodes for the limits to stop it,
+		//but they do stop the solver, which still gives the best move it found
+		if(_iterations.length < maxDepth + 1)
+			_iterations = new SearchStats[maxDepth + 1];
+		_iterationCount = 0;
+		_shortcut = false;
+		TranspositionTable table = _context.table();
+		if(table != null)//what was searched for earlier moves can make way for this one
+			table.newSearch();
+		long search;
+		synchronized(this) {//a cancel() from before this search can't stop the context after this clears it
+			search = ++_search;
+			_context.setLimits(TIME_BUDGET, NODE_BUDGET);
+		}
+		GTN tree = new GTN(b, 0, 1, _context);
+		_iterations[_iterationCount++] = tree.stats();
+		int best = tree.getBestMove();
+		_tree = tree;
+		_value = tree.evaluate();
+		_depthReached = 1;
+		report(best);
+		if(tree.fromBook() || tree.solved()) {
+			_shortcut = true;
+			return best;//searching deeper would just look the board up again
+		}
+		int forced = maxDepth >= 2 ? _context.forcedMove(b) : -1;
+		if(forced >= 0) {//there is nothing to decide, searching two plies gives the move's value
+			tree = new GTN(b, 0, 2, _context);
+			_iterations[_iterationCount++] = tree.stats();
+			_tree = tree;
+			_value = tree.evaluate();
+			_depthReached = 2;
+			_shortcut = true;
+			report(forced);
+			_context.clearLimits();
+			return forced;
+		}
+		
+		for(int depth = 2; depth <= maxDepth && _value != GTN.P1_WIN && _value != GTN.P2_WIN; depth++) {
+			long elapsed = (System.nanoTime() - start)/1000000;
+			if(TIME_BUDGET > 0 && elapsed >= TIME_BUDGET/2)
+				break;//each search takes longer than all the previous ones combined, so the next one would not finish in time
+			_context.setLimits(TIME_BUDGET > 0 ? TIME_BUDGET - elapsed : 0, NODE_BUDGET);
+			if(_cancelled == search)//checked after setLimits so a cancel() that came in first is never lost
+				break;
+			tree = new GTN(b, 0, depth, _context);
+			_iterations[_iterationCount++] = tree.stats();//stopped searches are counted too, they still took time
+			if(_context.stopped())
+				break;
+			best = tree.getBestMove();
+			_tree = tree;
+			_value = tree.evaluate();
+			_depthReached = depth;
+			report(best);
+		}
+		_context.clearLimits();
+		return best;
+	}
+	//tells the listener about the deepest search so far
+	private void report(int move) {
+		if(_listener != null)
+			_listener.searched(_depthReached, move, _value);
+	}
+	/**
+	 * Sets the listener told about each depth as it finishes
+	 * @param l - the listener, or null for none
+	 */
+	public void setListener(SearchListener l) {
+		_listener = l;
+	}
+	/**
+	 * Stops the search as soon as possible, can be called from any thread
+	 * The move being searched still returns the best move found so far.  Later moves are searched as usual,
+	 * even if the cancel() comes in after the search it was meant for has finished.
+	 */
+	public synchronized void cancel() {
+		_cancelled = _search;
+		_context.stop();
+	}
+	/**
+	 * @return - the depth of the deepest search that finished during the last move
+	 */
+	public int depthReached() {
+		return _depthReached;
+	}
+	/**
+	 * @return - true if the last move was looked up or forced, so depthReached() says nothing about how deep this player can search
+	 */
+	public boolean shortcut() {
+		return _shortcut;
+	}
+	/**
+	 * @return - the deepest search this player tries, or 0 if it keeps going until the end of the game
+	 */
+	public int maxDepth() {
+		return MAX_DEPTH;
+	}
+	/**
+	 * @return - the context this player searches with
+	 */
+	public SearchContext context() {
+		return _context;
+	}
+	/**
+	 * Returns the line of play the deepest search for the last move expects, see GTN.principalVariation()
+	 * The board the move was chosen for must not have been changed since.
+	 * @return - the moves of the line, starting with the move chosen
+	 */
+	public int[] principalVariation() {
+		return _tree.principalVariation(_depthReached);
+	}
+	/**
+	 * @return - what the searches for the last move did, added up over every depth
+	 */
+	public SearchStats stats() {
+		return SearchStats.combine(_iterations, _iterationCount, _depthReached);
+	}
+	/**
+	 * @return - the value of the last move chosen, as returned by GTN.evaluate()
+	 */
+	public int value() {
+		return _value;
+	}
+}
@@ -0,0 +1,104 @@
+package code;
+
+/**
+ * Counts how long something took, in buckets that double in size, so the spread of times can be seen without keeping every one
+ * Bucket 0 holds times under 1 ms, bucket i holds times from 2^(i-1) up to 2^i ms, and the last bucket holds everything longer.
+ * Not thread safe.
+ * @author Zach Kemphues
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 18; //the last bucket starts at 2^16 ms, a little over a minute
+
+	private long[] _counts;
+	private long _count;
+	private long _totalNanos;
+	private long _maxNanos;
+
+	/**
+	 * Creates an empty histogram
+	 */
+	public LatencyHistogram() {
+		_counts = new long[BUCKETS];
+	}
+	/**
+	 * Counts one time
+	 * @param nanos - the time in nanoseconds
+	 */
+	public void record(long nanos) {
+		long millis = nanos/1000000;
+		int bucket = millis == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+		_counts[bucket]++;
+		_count++;
+		_totalNanos += nanos;
+		_maxNanos = Math.max(_maxNanos, nanos);
+	}
+	/**
+	 * Counts every time another histogram counted, so histograms kept by separate threads can be put together
+	 * @param other - the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for(int i = 0; i < BUCKETS; i++)
+			_counts[i] += other._counts[i];
+		_count += other._count;
+		_totalNanos += other._totalNanos;
+		_maxNanos = Math.max(_maxNanos, other._maxNanos);
+	}
+	/**
+	 * @return - the number of times counted
+	 */
+	public long count() {
+		return _count;
+	}
+	/**
+	 * @return - the average time in milliseconds
+	 */
+	public double meanMillis() {
+		return _count == 0 ? 0 : _totalNanos/1e6/_count;
+	}
+	/**
+	 * @return - the longest time in milliseconds
+	 */
+	public double maxMillis() {
+		return _maxNanos/1e6;
+	}
+	/**
+	 * @param fraction - between 0 and 1, eg. 0.99 for the 99th percentile
+	 * @return - the top of the bucket holding the given fraction of the times, in milliseconds, which is at most twice the real percentile
+	 */
+	public long percentileMillis(double fraction) {
+		long needed = (long)Math.ceil(fraction*_count);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS - 1; i++) {
+			seen += _counts[i];
+			if(seen >= needed)
+				return 1L << i;
+		}
+		return (long)Math.ceil(maxMillis());
+	}
+	/**
+	 * @param bucket - a bucket from 0 to buckets()-1
+	 * @return - the number of times in the bucket
+	 */
+	public long bucketCount(int bucket) {
+		return _counts[bucket];
+	}
+	/**
+	 * @return - the number of buckets
+	 */
+	public int buckets() {
+		return BUCKETS;
+	}
+	
+	@Override
+	public String toString() {
+		String s = String.format("%d times, mean %.1f ms, 50%% under %d ms, 99%% under %d ms, max %.1f ms%n",
+				_count, meanMillis(), percentileMillis(0.5), percentileMillis(0.99), maxMillis());
+		for(int i = 0; i < BUCKETS; i++) {
+			if(_counts[i] == 0)
+				continue;
+			String range = i == 0 ? "< 1" : i == BUCKETS - 1 ? ">= " + (1L << (i-1)) : (1L << (i-1)) + "-" + (1L << i);
+			s += String.format("%12s ms: %d%n", range, _counts[i]);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,162 @@
+package code;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An AI player that runs several iterative deepening searches of the same board at once, all sharing one transposition table
+ * Each helper thread skips a different pattern of depths, so however many threads there are they spread out over different
+ * depths and parts of the tree instead of repeating each other's work, and fill the table with results the other threads can use.  The move played comes from the deepest search that finished.
+ * Unlike ParallelSearch the number of threads is not limited by the number of columns.
+ * @author Zach Kemphues
+ */
+public class LazySMP implements Engine {
+	//the depths a helper skips come in blocks of SKIP_SIZE depths, starting SKIP_PHASE depths in, so that no two of the first
+	//twenty helpers search the same depths, and the pattern repeats for more helpers than that
+	private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+	private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+	private final int THREADS;
+	private final long TIME_BUDGET;
+	private final int MAX_DEPTH;
+
+	private SharedTranspositionTable _table;
+	private SearchContext[] _context; //one per thread, all using _table
+	private ExecutorService _helpers;
+	private volatile boolean _done; //set once the main thread is finished, so helpers stop starting new searches
+	private int[] _depth; //the deepest search each thread finished
+	private int[] _move; //the best move from that search
+	private int[] _value; //the value of that move
+
+	/**
+	 * Creates an AI player that searches with the given number of threads
+	 * @param cols - the number of columns on the boards that will be searched
+	 * @param threads - the number of threads to search with, including the one calling bestMove
+	 * @param tableBits - the log base 2 of the number of entries in the shared table, each entry takes 16 bytes
+	 * @param millis - the number of milliseconds each move may take, or 0 for no limit
+	 * @param maxDepth - the deepest search to try, or 0 to keep going until the end of the game
+	 */
+	public LazySMP(int cols, int threads, int tableBits, long millis, int maxDepth) {
+		if(threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed to search");
+		THREADS = threads;
+		TIME_BUDGET = millis;
+		MAX_DEPTH = maxDepth;
+		_table = new SharedTranspositionTable(tableBits, TranspositionTable.DEPTH_PREFERRED);
+		_context = new SearchContext[threads];
+		for(int i = 0; i < threads; i++)
+			_context[i] = new SearchContext(cols, _table);
+		_depth = new int[threads];
+		_move = new int[threads];
+		_value = new int[threads];
+		_helpers = Executors.newFixedThreadPool(Math.max(1, threads - 1), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "LazySMP helper");
+				t.setDaemon(true);//helpers never keep the program open
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public int bestMove(Board b) {
+		long deadline = System.nanoTime() + TIME_BUDGET*1000000;
+		int maxDepth = b.rowsOnBoard()*b.columnsOnBoard() - b.piecesPlayed();
+		if(MAX_DEPTH > 0 && MAX_DEPTH < maxDepth)
+			maxDepth = MAX_DEPTH;
+		_done = false;
+		_table.newSearch();//what was searched for earlier moves can make way for this one
+
+		Future<?>[] helpers = new Future<?>[THREADS];
+		for(int i = 1; i < THREADS; i++) {
+			final int thread = i;
+			final Board copy = b.copy();
+			final int depth = maxDepth;
+			helpers[i] = _helpers.submit(new Runnable() {
+				@Override
+				public void run() {
+					deepen(thread, copy, 1, depth, deadline);
+				}
+			});
+		}
+		deepen(0, b, 1, maxDepth, deadline);
+
+		//the main thread is finished, stop the helpers and wait for them to leave the board alone
+		_done = true;
+		for(int i = 1; i < THREADS; i++)
+			_context[i].stop();
+		int best = 0;
+		for(int i = 1; i < THREADS; i++) {
+			try {
+				helpers[i].get();
+			} catch(Exception e) {
+				throw new IllegalStateException("A search thread failed", e);
+			}
+			if(_depth[i] > _depth[best])
+				best = i;
+		}
+		return _move[best];
+	}
+	//runs an iterative deepening search on one thread, starting from the given depth
+	//the main thread always finishes the first ply so there is a move to play
+	private void deepen(int thread, Board b, int firstDepth, int maxDepth, long deadline) {
+		SearchContext context = _context[thread];
+		_depth[thread] = 0;
+		if(thread == 0) {
+			context.clearLimits();
+			GTN tree = new GTN(b, 0, 1, context);
+			_depth[0] = 1;
+			_move[0] = tree.getBestMove();
+			_value[0] = tree.evaluate();
+			if(tree.fromBook() || tree.solved())
+				return;
+			int forced = context.forcedMove(b);
+			if(forced >= 0) {//nothing to decide, so the helpers are stopped as soon as they start
+				_move[0] = forced;
+				return;
+			}
+			firstDepth = 2;
+		}
+		for(int depth = firstDepth; depth <= maxDepth && !decided(thread); depth++) {
+			if(skips(thread, depth))
+				continue;
+			long left = (deadline - System.nanoTime())/1000000;
+			if(TIME_BUDGET > 0 && left <= 0)
+				break;
+			context.setLimits(TIME_BUDGET > 0 ? left : 0, 0);
+			if(_done)//checked after setLimits so a stop() that came in first is never lost
+				break;
+			GTN tree = new GTN(b, 0, depth, context);
+			if(context.stopped())
+				break;
+			_depth[thread] = depth;
+			_move[thread] = tree.getBestMove();
+			_value[thread] = tree.evaluate();
+		}
+		context.clearLimits();
+	}
+	//returns true if the thread leaves the depth to the other threads, which the main thread never does
+	private static boolean skips(int thread, int depth) {
+		if(thread == 0)
+			return false;
+		int i = (thread - 1)%SKIP_SIZE.length;
+		return ((depth + SKIP_PHASE[i])/SKIP_SIZE[i])%2 != 0;
+	}
+	//returns true if the thread has already found a forced win or loss
+	private boolean decided(int thread) {
+		return _depth[thread] > 0 && (_value[thread] == GTN.P1_WIN || _value[thread] == GTN.P2_WIN);
+	}
+	/**
+	 * @return - the table shared by all the search threads
+	 */
+	public TranspositionTable table() {
+		return _table;
+	}
+	/**
+	 * Stops the helper threads, after which the player can no longer be used
+	 */
+	public void shutdown() {
+		_helpers.shutdownNow();
+	}
+}
@@ -1,42 +1,55 @@
 package code;
-import java.util.LinkedList;
 
 /**
  * A collection of all the lines on the game board with information about how many are open for use by the AI
  * Allows for O(1) win condition checking, and O(1) AI board evaluation
+ * The lines are stored in flat arrays: each cell has a range of _cellLines holding the ids of the lines through it,
+ * and each line has a count of the pieces each player has in it.  Placing or removing a piece only visits the lines
+ * through its cell, once each, updating the totals with how that one line changed.
  * @author Zach Kemphues
  */
 public class LineHandler {
-	private LinkedList<Line>[][] _line;
 	private static final int HORIZONTAL = 1;
 	private static final int VERTICAL = 2;
 	private static final int DIAGONAL_LEFT = 3;
 	private static final int DIAGONAL_RIGHT = 4;
-	
+
 	private int _numCols;
 	private int _numRows;
-	
-	private int _P1val;
-	private int _P1opps;
-	private int _P2val;
-	private int _P2opps;
-	
+	private final int LENGTH; //pieces in a line
+
+	private int[] _cellStart; //the lines through cell col*rows+row are _cellLines[_cellStart[cell]] to _cellLines[_cellStart[cell+1]-1]
+	private int[] _cellLines;
+	private int[] _count; //_count[2*line + piece id] is the number of pieces that player has in the line
+	private int _numLines;
+
+	private int[] _val; //by piece id, the number of pieces the player has in lines they can still win with
+	private int[] _opps; //by piece id, the number of lines the player can still win with
+
 	/**
-	 * Initializes all the lines and the matrix of lists used to access them in O(1) time
+	 * Initializes all the lines of four and the index used to access them in O(1) time
 	 * @param cols - the number of columns on the board
 	 * @param rows - the number of rows on the board
 	 */
 	public LineHandler(int cols, int rows) {
-		_line = (LinkedList<Line>[][]) new LinkedList[cols][rows]; //using new LinkedList<Line>[cols][rows] gives a compiler error
+		this(cols, rows, Board.DEFAULT_WIN_LENGTH);
+	}
+	/**
+	 * Initializes all the lines and the index used to access them in O(1) time
+	 * Each cell is in at most 4*length lines, so placing or removing a piece takes time proportional to the length, not the size of the board
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param length - the number of pieces in a line
+	 */
+	public LineHandler(int cols, int rows, int length) {
 		_numCols = cols;
 		_numRows = rows;
-		_P1val = 0;
-		_P2val = 0;
-		_P1opps = 0;
-		_P2opps = 0;
+		LENGTH = length;
+		_val = new int[2];
+		_opps = new int[2];
 		initLines();
 	}
-	
+
 	/**
 	 * Updates all the lines that contain the placed piece and returns true if the piece resulted in a win
 	 * Also updates all the opportunity and value variables for both players with the new line data
@@ -47,36 +60,22 @@ public class LineHandler {
 	 */
 	public boolean place(Piece p, int col, int row) {
 		boolean foundWin = false;
-		
-		int oldVal1 = 0;
-		int newVal1 = 0;
-		int oldOpp1 = 0;
-		int newOpp1 = 0;
-		
-		int oldVal2 = 0;
-		int newVal2 = 0;
-		int oldOpp2 = 0;
-		int newOpp2 = 0;
-		
-		for(Line l: _line[col][row]) {
-			oldVal1 += l.valueP1();
-			oldVal2 += l.valueP2();
-			oldOpp1 += l.openP1();
-			oldOpp2 += l.openP2();
-			
-			if(l.add(p))
+		int me = p.id();
+		int other = 1 - me;
+		int cell = col*_numRows + row;
+		for(int i = _cellStart[cell]; i < _cellStart[cell+1]; i++) {
+			int l = 2*_cellLines[i];
+			int mine = ++_count[l + me];
+			int theirs = _count[l + other];
+			if(theirs == 0)//still open for this player, and one piece closer
+				_val[me]++;
+			if(mine == 1) {//was open for the other player, now blocked
+				_opps[other]--;
+				_val[other] -= theirs;
+			}
+			if(mine == LENGTH)
 				foundWin = true;
 		}
-		for(Line l: _line[col][row]) {
-			newVal1 += l.valueP1();
-			newVal2 += l.valueP2();
-			newOpp1 += l.openP1();
-			newOpp2 += l.openP2();
-		}
-		_P1val += newVal1 - oldVal1;
-		_P2val += newVal2 - oldVal2;
-		_P1opps += newOpp1 - oldOpp1;
-		_P2opps += newOpp2 - oldOpp2;
 		return foundWin;
 	}
 	/**
@@ -87,104 +86,106 @@ public class LineHandler {
 	 * @param row - the row the piece was removed from
 	 */
 	public void remove(Piece p, int col, int row) {
-		int oldVal1 = 0;
-		int newVal1 = 0;
-		int oldOpp1 = 0;
-		int newOpp1 = 0;
-		
-		int oldVal2 = 0;
-		int newVal2 = 0;
-		int oldOpp2 = 0;
-		int newOpp2 = 0;
-		
-		for(Line l: _line[col][row]) {
-			oldVal1 += l.valueP1();
-			oldVal2 += l.valueP2();
-			oldOpp1 += l.openP1();
-			oldOpp2 += l.openP2();
-			
-			l.remove(p);
-		}
-		for(Line l: _line[col][row]) {
-			newVal1 += l.valueP1();
-			newVal2 += l.valueP2();
-			newOpp1 += l.openP1();
-			newOpp2 += l.openP2();
+		int me = p.id();
+		int other = 1 - me;
+		int cell = col*_numRows + row;
+		for(int i = _cellStart[cell]; i < _cellStart[cell+1]; i++) {
+			int l = 2*_cellLines[i];
+			int mine = --_count[l + me];
+			int theirs = _count[l + other];
+			if(theirs == 0)
+				_val[me]--;
+			if(mine == 0) {//open for the other player again
+				_opps[other]++;
+				_val[other] += theirs;
+			}
 		}
-		_P1val += newVal1 - oldVal1;
-		_P2val += newVal2 - oldVal2;
-		_P1opps += newOpp1 - oldOpp1;
-		_P2opps += newOpp2 - oldOpp2;
 	}
-	//Initializes all the lines and creates references to them by row and column using lists
+	//Initializes all the lines and the index of them by row and column
 	private void initLines() {
-		//Initialize the lists
-		for(int r = 0; r < _numRows; r++)
-			for(int c = 0; c < _numCols; c++)
-				_line[c][r] = new LinkedList<Line>();
-		
-		//Add lines to the lists
+		int cells = _numCols*_numRows;
+		_cellStart = new int[cells + 1];
+		addLines(null);//count the lines through each cell
+		for(int i = 1; i <= cells; i++)
+			_cellStart[i] += _cellStart[i-1];
+		_cellLines = new int[_cellStart[cells]];
+		int[] next = new int[cells];
+		System.arraycopy(_cellStart, 0, next, 0, cells);
+		addLines(next);//store them
+		_count = new int[2*_numLines];
+		_opps[Piece.PLAYER1] = _numLines;
+		_opps[Piece.PLAYER2] = _numLines;
+	}
+	//Goes through every line on the board, counting the lines through each cell in _cellStart if next is null,
+	//otherwise storing each line's id at next[cell] in _cellLines for each cell it goes through
+	private void addLines(int[] next) {
+		_numLines = 0;
 		for(int r = 0; r < _numRows; r++) {
 			for(int c = 0; c < _numCols; c++) {
-				if(c+3 < _numCols) 
-					makeLine(c,r,HORIZONTAL);
-				if(r+3 < _numRows)
-					makeLine(c,r,VERTICAL);
-				if(c+3 < _numCols && r+3 < _numRows)
-					makeLine(c,r,DIAGONAL_RIGHT);
-				if(c-3 >= 0 && r+3 < _numRows)
-					makeLine(c,r,DIAGONAL_LEFT);
+				if(c+LENGTH-1 < _numCols)
+					makeLine(c,r,HORIZONTAL,next);
+				if(r+LENGTH-1 < _numRows)
+					makeLine(c,r,VERTICAL,next);
+				if(c+LENGTH-1 < _numCols && r+LENGTH-1 < _numRows)
+					makeLine(c,r,DIAGONAL_RIGHT,next);
+				if(c-LENGTH+1 >= 0 && r+LENGTH-1 < _numRows)
+					makeLine(c,r,DIAGONAL_LEFT,next);
 			}
 		}
 	}
-	//Creates a new line and adds references to it in all the appropriate lists
-	private void makeLine(int col, int row, int dir) {
-		Line l = new Line();
-		_P1opps++;
-		_P2opps++;
+	//Adds the line starting at col,row to the cells it goes through
+	private void makeLine(int col, int row, int dir, int[] next) {
+		int dc;
+		int dr;
 		switch(dir) {
 		case HORIZONTAL:
-			for(int c = col; c < col+4; c++)
-				_line[c][row].push(l);
+			dc = 1;
+			dr = 0;
 			break;
 		case VERTICAL:
-			for(int r = row; r < row+4; r++)
-				_line[col][r].push(l);
+			dc = 0;
+			dr = 1;
 			break;
 		case DIAGONAL_RIGHT:
-			for(int c = col; c < col+4; c++)
-				_line[c][row++].push(l);
-			break;
-		case DIAGONAL_LEFT:
-			for(int c = col; c > col-4; c--)
-				_line[c][row++].push(l);
+			dc = 1;
+			dr = 1;
 			break;
-		default:
+		default://DIAGONAL_LEFT
+			dc = -1;
+			dr = 1;
 			break;
-		}	
+		}
+		for(int i = 0; i < LENGTH; i++) {
+			int cell = (col + i*dc)*_numRows + row + i*dr;
+			if(next == null)
+				_cellStart[cell+1]++;
+			else
+				_cellLines[next[cell]++] = _numLines;
+		}
+		_numLines++;
 	}
 	/**
 	 * @return - the number of pieces Player1 has placed in lines that can still win
 	 */
 	public int valueP1() {
-		return _P1val;
+		return _val[Piece.PLAYER1];
 	}
 	/**
 	 * @return - the number of pieces Player2 has placed in lines that can still win
 	 */
 	public int valueP2() {
-		return _P2val;
+		return _val[Piece.PLAYER2];
 	}
 	/**
 	 * @return - the number of lines that could allow Player1 to win
 	 */
 	public int oppsP1() {
-		return _P1opps;
+		return _opps[Piece.PLAYER1];
 	}
 	/**
 	 * @return - the number of lines that could allow Player2 to win
 	 */
 	public int oppsP2() {
-		return _P2opps;
+		return _opps[Piece.PLAYER2];
 	}
 }
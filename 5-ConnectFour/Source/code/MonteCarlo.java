@@ -0,0 +1,453 @@
+package code;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An AI player that chooses moves by Monte Carlo tree search, playing random games to the end instead of judging positions with evaluate()
+ * Each playout walks down a tree of the positions tried so far, choosing moves by UCT: the move that has scored best so far plus a bonus
+ * for moves that have been tried less.  Once it leaves the tree it adds one more position to it, then plays random moves until the game
+ * ends and counts the result for every position on the way.  The move played is the one that was tried the most.
+ * Random games are played on a board of its own, a byte per cell that is checked for wins around the piece just placed,
+ * so playouts allocate nothing.  Each random move first looks for a column either player would win in, which checks the lines
+ * through the top of every open column, so a move costs time proportional to the columns times the win length rather than the cells.
+ * That keeps it useful on big boards, and with short time limits, where a minimax search can only look a few plies ahead.
+ * The tree is kept between moves, and the part under the moves played since is searched further instead of starting again.
+ * With more than one thread every thread grows its own tree from the same position, and their counts are added up to choose the move.
+ * Another thread can stop it early with cancel().
+ * @author Zach Kemphues
+ */
+public class MonteCarlo implements Engine {
+	private static final double EXPLORATION = 1.4; //how much UCT favours moves that have been tried less, about the square root of 2
+	private static final int MAX_NODES = 1 << 20; //each tree stops growing at this many positions, and just plays out from its leaves
+	private static final byte OPEN = 0; //results of the move into a position
+	private static final byte WON = 1;
+	private static final byte DRAWN = 2;
+
+	private final int THREADS;
+	private final long TIME_BUDGET;
+	private final long PLAYOUT_BUDGET;
+
+	private Tree[] _trees; //one per thread
+	private ExecutorService _helpers;
+	private int[] _rootMoves; //the moves leading to the position the trees grew from, or null if there are no trees yet
+	private int _cols; //the size of board the trees are for
+	private int _rows;
+	private int _winLength;
+	private long _playouts; //playouts for every move so far
+	private long _reused; //playouts carried over from earlier moves into the last one
+	private double _winRate; //how often the move played won its playouts, counting a draw as half
+	private volatile boolean _cancelled;
+
+	/**
+	 * Creates an AI player that searches with a single thread
+	 * @param millis - the number of milliseconds each move may take, or 0 for no limit
+	 * @param playouts - the number of random games to play for each move, or 0 for no limit
+	 */
+	public MonteCarlo(long millis, long playouts) {
+		this(1, millis, playouts);
+	}
+	/**
+	 * Creates an AI player that searches with the given number of threads
+	 * @param threads - the number of trees to grow at once, including the one on the thread calling bestMove
+	 * @param millis - the number of milliseconds each move may take, or 0 for no limit
+	 * @param playouts - the number of random games to play for each move across all the threads, or 0 for no limit
+	 */
+	public MonteCarlo(int threads, long millis, long playouts) {
+		if(threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed to search");
+		if(millis <= 0 && playouts <= 0)
+			throw new IllegalArgumentException("A time or playout limit is needed, or the search would never end");
+		THREADS = threads;
+		TIME_BUDGET = millis;
+		PLAYOUT_BUDGET = playouts;
+		_trees = new Tree[threads];
+		for(int i = 0; i < threads; i++)
+			_trees[i] = new Tree(i);
+		if(threads > 1) {
+			_helpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "MonteCarlo helper");
+					t.setDaemon(true);//helpers never keep the program open
+					return t;
+				}
+			});
+		}
+	}
+
+	@Override
+	public int bestMove(Board b) {
+		long deadline = System.nanoTime() + TIME_BUDGET*1000000;
+		boolean reuse = follows(b);
+		_reused = 0;
+		for(Tree t : _trees) {
+			t.moveTo(b, reuse ? _rootMoves.length : -1);
+			_reused += t._root._visits;
+		}
+		_rootMoves = new int[b.piecesPlayed()];
+		for(int turn = 0; turn < _rootMoves.length; turn++)
+			_rootMoves[turn] = b.moveAt(turn);
+		_cols = b.columnsOnBoard();
+		_rows = b.rowsOnBoard();
+		_winLength = b.winLength();
+
+		if(_trees[0]._root._children.length > 1) {//a forced move, or a win, needs no searching
+			long each = PLAYOUT_BUDGET/THREADS;
+			Future<?>[] helpers = new Future<?>[THREADS];
+			for(int i = 1; i < THREADS; i++) {
+				final Tree t = _trees[i];
+				helpers[i] = _helpers.submit(() -> t.search(deadline, each));
+			}
+			_trees[0].search(deadline, PLAYOUT_BUDGET - each*(THREADS - 1));
+			for(int i = 1; i < THREADS; i++) {
+				try {
+					helpers[i].get();
+				} catch(Exception e) {
+					throw new IllegalStateException("A search thread failed", e);
+				}
+			}
+		}
+
+		//every tree has the same moves at the root, in the same order
+		Node[] moves = _trees[0]._root._children;
+		int best = 0;
+		long bestVisits = -1;
+		long bestScore = 0;
+		for(int i = 0; i < moves.length; i++) {
+			long visits = 0;
+			long score = 0;
+			for(Tree t : _trees) {
+				visits += t._root._children[i]._visits;
+				score += t._root._children[i]._score;
+			}
+			if(visits > bestVisits) {
+				best = i;
+				bestVisits = visits;
+				bestScore = score;
+			}
+		}
+		_winRate = moves[best]._result == WON ? 1 : bestVisits == 0 ? 0.5 : bestScore/(2.0*bestVisits);
+		return moves[best]._move;
+	}
+	//returns true if the board is the position the trees grew from with some moves played since
+	private boolean follows(Board b) {
+		if(_rootMoves == null || b.columnsOnBoard() != _cols || b.rowsOnBoard() != _rows || b.winLength() != _winLength)
+			return false;
+		if(b.piecesPlayed() < _rootMoves.length)
+			return false;
+		for(int turn = 0; turn < _rootMoves.length; turn++) {
+			if(b.moveAt(turn) != _rootMoves[turn])
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Stops the search as soon as possible, can be called from any thread
+	 * The move being searched still returns the best move found so far, and every later move plays no playouts at all.
+	 */
+	public void cancel() {
+		_cancelled = true;
+	}
+	/**
+	 * @return - the number of random games played for every move so far
+	 */
+	public long playouts() {
+		return _playouts;
+	}
+	/**
+	 * @return - the number of random games already played under the position of the last move, before it was asked for
+	 */
+	public long reusedPlayouts() {
+		return _reused;
+	}
+	/**
+	 * @return - how often the last move played won its random games, counting a draw as half
+	 */
+	public double winRate() {
+		return _winRate;
+	}
+	/**
+	 * Stops the helper threads, after which the player can no longer be used
+	 */
+	public void shutdown() {
+		if(_helpers != null)
+			_helpers.shutdownNow();
+	}
+
+	//a position in a tree, reached by playing _move from its parent
+	private static class Node {
+		private int _move;
+		private byte _result; //whether _move ended the game
+		private int _visits; //playouts through this position
+		private long _score; //2 for each of those playouts won by the player who played _move, 1 for each draw
+		private Node[] _children; //the positions after each move from here, or null until it is expanded
+
+		public Node(int move, byte result) {
+			_move = move;
+			_result = result;
+		}
+	}
+
+	//a tree grown by one thread, with the board its playouts are played on
+	private class Tree {
+		private final long SEED;
+		private Node _root;
+		private int _rootPieces; //pieces on the board at the root
+		private int _nodes; //positions in the tree
+		private long _random; //xorshift state, so choosing a move needs no locking or allocation
+
+		private int _cols;
+		private int _rows;
+		private int _winLength;
+		private byte[] _cells; //the playout board, 1 or 2 for each player's pieces and 0 for empty, by col*rows+row
+		private int[] _height;
+		private int _pieces;
+		private int[] _played; //the columns played since the root, so they can be taken back
+		private int[] _open; //the columns that are not full during a playout, in no order
+		private Node[] _path; //the positions walked through in the tree
+
+		public Tree(long seed) {
+			SEED = seed;
+			_random = seed*0x9E3779B97F4A7C15L + 1;//never 0
+		}
+		//moves the root to the board, keeping what is known about it if it is reachable from the old root in the given number of moves
+		public void moveTo(Board b, int oldPieces) {
+			Node root = null;
+			if(oldPieces >= 0) {
+				root = _root;
+				for(int turn = oldPieces; turn < b.piecesPlayed() && root != null; turn++)
+					root = child(root, b.moveAt(turn));
+			}
+			if(_cells == null || _cols != b.columnsOnBoard() || _rows != b.rowsOnBoard() || _winLength != b.winLength()) {
+				_cols = b.columnsOnBoard();
+				_rows = b.rowsOnBoard();
+				_winLength = b.winLength();
+				_cells = new byte[_cols*_rows];
+				_height = new int[_cols];
+				_played = new int[_cols*_rows + 1];
+				_open = new int[_cols];
+				_path = new Node[_cols*_rows + 2];
+			}
+			for(int col = 0; col < _cols; col++) {
+				_height[col] = 0;
+				for(int row = 0; row < _rows; row++) {
+					Piece p = b.pieceAt(col, row);
+					_cells[col*_rows + row] = (byte)(p == Piece.P1 ? 1 : p == Piece.P2 ? 2 : 0);
+					if(p != Piece.EMPTY)
+						_height[col] = row + 1;
+				}
+			}
+			_pieces = b.piecesPlayed();
+			_rootPieces = _pieces;
+			if(root == null) {
+				root = new Node(-1, OPEN);
+				_random = SEED*0x9E3779B97F4A7C15L + 1;//a new tree searches the same way every time
+			}
+			_root = root;
+			_nodes = count(root);
+			if(_root._children == null)
+				expand(_root);
+		}
+		//returns the child reached by playing in a column, or null if it hasn't been added to the tree
+		private Node child(Node n, int col) {
+			if(n._children == null)
+				return null;
+			for(Node c : n._children) {
+				if(c._move == col)
+					return c;
+			}
+			return null;
+		}
+		//counts the positions in the tree under a node
+		private int count(Node n) {
+			int count = 0;
+			ArrayDeque<Node> waiting = new ArrayDeque<Node>();
+			waiting.push(n);
+			while(!waiting.isEmpty()) {
+				Node next = waiting.pop();
+				count++;
+				if(next._children != null) {
+					for(Node c : next._children)
+						waiting.push(c);
+				}
+			}
+			return count;
+		}
+		//plays playouts until the time or playouts run out, or the search is cancelled
+		public void search(long deadline, long playouts) {
+			long played = 0;
+			while(!_cancelled && (PLAYOUT_BUDGET <= 0 || played < playouts) && (TIME_BUDGET <= 0 || System.nanoTime() < deadline)) {
+				playout();
+				played++;
+			}
+			synchronized(MonteCarlo.this) {
+				_playouts += played;
+			}
+		}
+		//walks down the tree, adds a position to it, plays a random game from there and counts the result on the way back up
+		private void playout() {
+			Node n = _root;
+			int depth = 0;
+			_path[0] = n;
+			while(n._children != null && n._result == OPEN) {
+				n = select(n);
+				play(n._move);
+				_path[++depth] = n;
+			}
+			if(n._result == OPEN && n._visits > 0 && _nodes < MAX_NODES) {
+				expand(n);
+				n = n._children[(int)((next() >>> 1)%n._children.length)];
+				play(n._move);
+				_path[++depth] = n;
+			}
+			int winner; //1 or 2 for the player who won, 0 for a draw
+			if(n._result == WON)
+				winner = player(_pieces);
+			else if(n._result == DRAWN)
+				winner = 0;
+			else
+				winner = randomGame();
+			for(int i = depth; i >= 0; i--) {
+				Node p = _path[i];
+				p._visits++;
+				if(winner == 0)
+					p._score += 1;
+				else if(winner == player(_rootPieces + i))
+					p._score += 2;
+			}
+			while(_pieces > _rootPieces)
+				undo();
+		}
+		//returns the child of a node with the highest UCT value, or the first one that hasn't been tried
+		private Node select(Node n) {
+			double log = Math.log(n._visits);
+			Node best = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for(Node c : n._children) {
+				if(c._visits == 0)
+					return c;
+				double value = c._score/(2.0*c._visits) + EXPLORATION*Math.sqrt(log/c._visits);
+				if(value > bestValue) {
+					best = c;
+					bestValue = value;
+				}
+			}
+			return best;
+		}
+		//adds the positions after each move to the tree, leaving out moves that would never be played:
+		//if the player can win only the winning move is added, and if the opponent could win next only the move blocking them is
+		private void expand(Node n) {
+			int count = 0;
+			int block = -1;
+			byte opponent = (byte)player(_pieces);
+			for(int col = 0; col < _cols; col++) {
+				if(_height[col] < _rows) {
+					count++;
+					if(block < 0 && wins(col, _height[col], opponent))
+						block = col;
+				}
+			}
+			Node[] children = new Node[count];
+			count = 0;
+			for(int col = 0; col < _cols; col++) {
+				if(_height[col] == _rows)
+					continue;
+				byte result = play(col) ? WON : _pieces == _cols*_rows ? DRAWN : OPEN;
+				undo();
+				if(result == WON) {
+					children = new Node[] {new Node(col, WON)};
+					count = 1;
+					break;
+				}
+				children[count++] = new Node(col, result);
+			}
+			if(block >= 0 && count > 1) {
+				byte result = play(block) ? WON : _pieces == _cols*_rows ? DRAWN : OPEN;
+				undo();
+				children = new Node[] {new Node(block, result)};
+				count = 1;
+			}
+			n._children = children;
+			_nodes += count;
+		}
+		//plays random moves until the game ends, returning the winner or 0 for a draw
+		private int randomGame() {
+			int open = 0;
+			for(int col = 0; col < _cols; col++) {
+				if(_height[col] < _rows)
+					_open[open++] = col;
+			}
+			while(open > 0) {
+				int i = urgent(open);
+				if(i < 0)
+					i = (int)((next() >>> 1)%open);
+				int col = _open[i];
+				if(play(col))
+					return player(_pieces);
+				if(_height[col] == _rows)
+					_open[i] = _open[--open];
+			}
+			return 0;
+		}
+		//returns the index in _open of a column the player to move wins in, or else one the opponent would win in, or -1 for neither
+		private int urgent(int open) {
+			byte p = (byte)player(_pieces + 1);
+			int block = -1;
+			for(int i = 0; i < open; i++) {
+				int col = _open[i];
+				if(wins(col, _height[col], p))
+					return i;
+				if(block < 0 && wins(col, _height[col], (byte)(3 - p)))
+					block = i;
+			}
+			return block;
+		}
+		//places the next player's piece in a column that is not full, returning true if it wins
+		private boolean play(int col) {
+			int row = _height[col]++;
+			byte p = (byte)player(++_pieces);
+			_cells[col*_rows + row] = p;
+			_played[_pieces - _rootPieces] = col;
+			return wins(col, row, p);
+		}
+		//takes back the last piece played
+		private void undo() {
+			int col = _played[_pieces - _rootPieces];
+			_cells[col*_rows + --_height[col]] = 0;
+			_pieces--;
+		}
+		//returns 1 if the piece played on the given turn, counting from 1, is Player1's and 2 if it is Player2's
+		private int player(int turn) {
+			return 2 - turn%2;
+		}
+		//returns true if the piece at col, row is part of a line long enough to win
+		private boolean wins(int col, int row, byte p) {
+			return row + 1 >= _winLength && line(col, row, 0, -1, p) + 1 >= _winLength//vertical, only ever down from the top piece
+					|| line(col, row, 1, 0, p) + line(col, row, -1, 0, p) + 1 >= _winLength
+					|| line(col, row, 1, 1, p) + line(col, row, -1, -1, p) + 1 >= _winLength
+					|| line(col, row, 1, -1, p) + line(col, row, -1, 1, p) + 1 >= _winLength;
+		}
+		//counts the player's pieces in a line from col, row in one direction, not counting the piece at col, row
+		private int line(int col, int row, int dCol, int dRow, byte p) {
+			int count = 0;
+			col += dCol;
+			row += dRow;
+			while(count < _winLength - 1 && col >= 0 && col < _cols && row >= 0 && row < _rows && _cells[col*_rows + row] == p) {
+				count++;
+				col += dCol;
+				row += dRow;
+			}
+			return count;
+		}
+		//returns the next pseudo random number
+		private long next() {
+			_random ^= _random << 13;
+			_random ^= _random >>> 7;
+			_random ^= _random << 17;
+			return _random;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package code;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A precomputed table of the best move for every position early in the game, read straight from a memory-mapped file
+ * The file is a header followed by fixed size records sorted by position key, so a lookup is a binary search of the file
+ * that does not load anything onto the heap.  A board and its mirror image share one record.
+ * Books are created by BookGenerator.
+ * @author Zach Kemphues
+ */
+public class OpeningBook implements Closeable {
+	private static final int MAGIC = 0x4334424B;//"C4BK"
+	private static final int HEADER_SIZE = 20;//magic, columns, rows, plies and number of records
+	private static final int RECORD_SIZE = 16;//key, score, move, depth and 2 bytes of padding
+
+	private RandomAccessFile _file;
+	private MappedByteBuffer _map;
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int PLIES;
+	private final int COUNT;
+
+	/**
+	 * Opens a book written by BookGenerator
+	 * @param f - the book file
+	 * @throws IOException - if the file cannot be read or is not a book
+	 */
+	public OpeningBook(File f) throws IOException {
+		_file = new RandomAccessFile(f, "r");
+		FileChannel channel = _file.getChannel();
+		_map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if(channel.size() < HEADER_SIZE || _map.getInt(0) != MAGIC) {
+			close();
+			throw new IOException(f + " is not an opening book");
+		}
+		NUM_COLS = _map.getInt(4);
+		NUM_ROWS = _map.getInt(8);
+		PLIES = _map.getInt(12);
+		COUNT = _map.getInt(16);
+		if(channel.size() != HEADER_SIZE + (long)COUNT*RECORD_SIZE) {
+			close();
+			throw new IOException(f + " is truncated");
+		}
+	}
+	/**
+	 * @param b - the board to look up
+	 * @return - the best move for the board, or -1 if the board is not in the book
+	 */
+	public int bestMove(Board b) {
+		long key = b.positionKey();
+		long mirror = b.mirrorPositionKey();
+		int i = find(Math.min(key, mirror));
+		if(i < 0)
+			return -1;
+		int move = _map.get(HEADER_SIZE + i*RECORD_SIZE + 12);
+		return key <= mirror ? move : NUM_COLS - 1 - move;
+	}
+	/**
+	 * @param b - the board to look up
+	 * @return - the value of the best move, as returned by GTN.evaluate(), or 0 if the board is not in the book
+	 */
+	public int score(Board b) {
+		int i = find(Math.min(b.positionKey(), b.mirrorPositionKey()));
+		return i < 0 ? 0 : _map.getInt(HEADER_SIZE + i*RECORD_SIZE + 8);
+	}
+	/**
+	 * @param b - the board to look up
+	 * @return - the depth the best move was searched to, or 0 if the board is not in the book
+	 */
+	public int depth(Board b) {
+		int i = find(Math.min(b.positionKey(), b.mirrorPositionKey()));
+		return i < 0 ? 0 : _map.get(HEADER_SIZE + i*RECORD_SIZE + 13);
+	}
+	//binary searches the records for the key, returning its index or -1 if it is not there
+	private int find(long key) {
+		if(_map == null)
+			return -1;
+		int low = 0;
+		int high = COUNT - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			long k = _map.getLong(HEADER_SIZE + mid*RECORD_SIZE);
+			if(k < key)
+				low = mid + 1;
+			else if(k > key)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+	/**
+	 * @param b - a board
+	 * @return - true if the book was made for boards the size of b, books are always for four in a row
+	 */
+	public boolean fits(Board b) {
+		return b.columnsOnBoard() == NUM_COLS && b.rowsOnBoard() == NUM_ROWS && b.winLength() == Board.DEFAULT_WIN_LENGTH;
+	}
+	/**
+	 * @return - the number of pieces played in the deepest positions in the book
+	 */
+	public int plies() {
+		return PLIES;
+	}
+	/**
+	 * @return - the number of positions in the book
+	 */
+	public int size() {
+		return COUNT;
+	}
+	/**
+	 * Closes the book file
+	 */
+	@Override
+	public void close() throws IOException {
+		_map = null;
+		_file.close();
+	}
+	/**
+	 * Writes a book file
+	 * @param f - the file to write
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param plies - the number of pieces played in the deepest positions
+	 * @param keys - the smaller of the position key and mirror position key of each position, sorted in increasing order
+	 * @param moves - the best move for each position, for whichever of the board and its mirror image has the smaller key
+	 * @param scores - the value of each best move
+	 * @param depths - the depth each best move was searched to
+	 * @throws IOException - if the file cannot be written
+	 */
+	public static void write(File f, int cols, int rows, int plies, long[] keys, int[] moves, int[] scores, int[] depths) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(cols);
+			out.writeInt(rows);
+			out.writeInt(plies);
+			out.writeInt(keys.length);
+			for(int i = 0; i < keys.length; i++) {
+				if(i > 0 && keys[i] <= keys[i-1])
+					throw new IllegalArgumentException("Book keys must be unique and sorted");
+				out.writeLong(keys[i]);
+				out.writeInt(scores[i]);
+				out.writeByte(moves[i]);
+				out.writeByte(depths[i]);
+				out.writeShort(0);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -3,9 +3,12 @@ package code;
 /**
  * A piece that in a location off the board
  * Used to avoid having to worry about null pointers when attempting access something off the board
+ * The only instance is Piece.OUT_OF_BOUNDS
  * @author Zach Kemphues
  */
-public class OutOfBounds implements Piece{
+public final class OutOfBounds implements Piece{
+	
+	OutOfBounds() {}
 
 	@Override
 	public Piece next() {
@@ -13,18 +16,8 @@ public class OutOfBounds implements Piece{
 	}
 
 	@Override
-	public void setPosition(int c, int r) {
-		
-	}
-
-	@Override
-	public int getCol() {
-		return -1;
-	}
-
-	@Override
-	public int getRow() {
-		return -1;
+	public int id() {
+		return OUT_OF_BOUNDS_ID;
 	}
 	
 	public String toString() {
@@ -0,0 +1,89 @@
+package code;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An AI player that searches each possible move on its own thread, using its own copy of the board
+ * Every move is searched to its exact value, so the result does not depend on which thread finishes first,
+ * and is the same move a GTN of the same depth would choose.
+ * @author Zach Kemphues
+ */
+public class ParallelSearch implements Engine {
+	private final int DEPTH;
+	private ForkJoinPool _pool;
+	private SearchContext[] _context; //one context per column, so each column's search learns from the last move's
+
+	/**
+	 * Creates an AI player that searches to depth d using the common fork-join pool
+	 * @param d - the depth to search the game tree
+	 */
+	public ParallelSearch(int d) {
+		this(d, ForkJoinPool.commonPool());
+	}
+	/**
+	 * Creates an AI player that searches to depth d using the threads of the given pool
+	 * @param d - the depth to search the game tree
+	 * @param pool - the pool that runs the search of each move
+	 */
+	public ParallelSearch(int d, ForkJoinPool pool) {
+		DEPTH = d;
+		_pool = pool;
+		_context = new SearchContext[0];
+	}
+
+	@Override
+	public int bestMove(Board b) {
+		int cols = b.columnsOnBoard();
+		if(_context.length != cols) {
+			_context = new SearchContext[cols];
+			for(int col = 0; col < cols; col++)
+				_context[col] = new SearchContext(cols);
+		}
+		Piece next = b.lastPiece().next();
+		MoveSearch[] moves = new MoveSearch[cols];
+		for(int col = 0; col < cols; col++) {
+			if(b.isFull(col))
+				continue;
+			moves[col] = new MoveSearch(b.copy(), next, col, DEPTH, _context[col]);
+			_pool.execute(moves[col]);
+		}
+		
+		//combine the results in column order, breaking ties the same way GTN does
+		boolean p1Turn = next == Piece.P1;
+		int best = -1;
+		int bestValue = 0;
+		for(int col = 0; col < cols; col++) {
+			if(moves[col] == null)
+				continue;
+			int value = moves[col].join();
+			if(best == -1 || GTN.preferred(value, col, bestValue, best, p1Turn)) {
+				best = col;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+	
+	//searches a single move on its own copy of the board and returns its exact value
+	private static class MoveSearch extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		private Board _board;
+		private Piece _piece;
+		private int _col;
+		private int _depth;
+		private SearchContext _context;
+		
+		public MoveSearch(Board b, Piece p, int col, int depth, SearchContext c) {
+			_board = b;
+			_piece = p;
+			_col = col;
+			_depth = depth;
+			_context = c;
+		}
+		@Override
+		protected Integer compute() {
+			_board.place(_piece, _col);
+			return new GTN(_board, 1, _depth, _context).evaluate();
+		}
+	}
+}
@@ -2,27 +2,37 @@ package code;
 
 /**
  * The pieces that make up the board.
+ * Pieces are immutable and only one of each kind exists, so they can be compared with == and never need to be created.
+ * Where a piece is on the board is kept by the board, not the piece.
  * @author Zach Kemphues
  */
 public interface Piece {
+	/** id() of Player1's pieces */
+	public static final int PLAYER1 = 0;
+	/** id() of Player2's pieces */
+	public static final int PLAYER2 = 1;
+	/** id() of an empty location */
+	public static final int EMPTY_ID = 2;
+	/** id() of a location off the board */
+	public static final int OUT_OF_BOUNDS_ID = 3;
+	
+	/** The human player's piece */
+	public static final Piece P1 = new Player1();
+	/** The computer opponent's piece */
+	public static final Piece P2 = new Player2();
+	/** An empty location on the board */
+	public static final Piece EMPTY = new Empty();
+	/** A location off the board */
+	public static final Piece OUT_OF_BOUNDS = new OutOfBounds();
+	
 	/**
 	 * @return - the piece that follows this one in the turn order.
 	 */
 	public Piece next();
 	/**
-	 * Sets the position of the piece on the board for future reference
-	 * @param c - the column of the piece
-	 * @param r - the row of the piece
-	 */
-	public void setPosition(int c, int r);
-	/**
-	 * @return - the column the piece is in
-	 */
-	public int getCol();
-	/**
-	 * @return - the row the piece is in
+	 * @return - PLAYER1, PLAYER2, EMPTY_ID or OUT_OF_BOUNDS_ID, usable as an array index
 	 */
-	public int getRow();
+	public int id();
 	
 	@Override
 	public String toString();
@@ -2,31 +2,21 @@ package code;
 
 /**
  * A piece for the human player
+ * The only instance is Piece.P1
  * @author Ivor
  */
-public class Player1 implements Piece{
-	private int myRow;
-	private int myCol;
+public final class Player1 implements Piece{
+	
+	Player1() {}
 	
 	@Override
 	public Piece next() {
-		return new Player2();
-	}
-
-	@Override
-	public void setPosition(int c, int r) {
-		myRow = r;
-		myCol = c;
-	}
-
-	@Override
-	public int getCol() {
-		return myCol;
+		return Piece.P2;
 	}
 
 	@Override
-	public int getRow() {
-		return myRow;
+	public int id() {
+		return PLAYER1;
 	}
 	
 	@Override
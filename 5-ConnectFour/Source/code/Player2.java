@@ -1,31 +1,21 @@
 package code;
 /**
  * A piece for the computer opponent
+ * The only instance is Piece.P2
  * @author Zach Kemphues
  */
-public class Player2 implements Piece{
-	private int myRow;
-	private int myCol;
+public final class Player2 implements Piece{
+	
+	Player2() {}
 	
 	@Override
 	public Piece next() {
-		return new Player1();
-	}
-
-	@Override
-	public void setPosition(int c, int r) {
-		myRow = r;
-		myCol = c;
-	}
-
-	@Override
-	public int getCol() {
-		return myCol;
+		return Piece.P1;
 	}
 
 	@Override
-	public int getRow() {
-		return myRow;
+	public int id() {
+		return PLAYER2;
 	}
 	
 	@Override
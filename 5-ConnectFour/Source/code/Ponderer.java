@@ -0,0 +1,198 @@
+package code;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An AI player that keeps thinking while its opponent decides on their move
+ * After each move it searches every reply the opponent could make on a background thread, one depth at a time across
+ * all the replies so they all get about the same attention, using the same context as the player.  When the real reply
+ * comes in, pondering stops and the search of that reply is already in the transposition table, so the player starts
+ * deep instead of cold.  Each move starts a new generation in the table, so the searches of the replies that weren't played
+ * can be replaced by any later search, however deep they went, instead of filling the table for the rest of the game.
+ * If the reply was pondered at least as deep as the player last really searched a move, its move is played without searching at all.
+ * @author Zach Kemphues
+ */
+public class Ponderer implements Engine {
+	private IterativeDeepening _engine;
+	private SearchContext _context;
+	private ExecutorService _thread;
+	private Future<?> _pondering;
+	private volatile boolean _stop; //set to stop pondering before the next search starts
+	private volatile boolean _shutdown;
+
+	private long[] _replyKey; //the hash of the board after each reply, so the real reply can be recognized
+	private int[] _move; //the best answer found to each reply
+	private int[] _value; //the value of that answer
+	private int[] _depth; //the depth that answer was found at, 0 if the reply is not being pondered
+	private int _lastDepth; //the depth the player searched its last move to, not counting moves that were looked up or forced
+	private long _instant; //moves played straight from pondering
+
+	/**
+	 * Creates a player that ponders between the moves of the given player
+	 * @param engine - the player to ponder for, which must not be used by anything else
+	 */
+	public Ponderer(IterativeDeepening engine) {
+		_engine = engine;
+		_context = engine.context();
+		_replyKey = new long[0];
+		_lastDepth = Integer.MAX_VALUE;//until a real search, only decided replies are played straight away
+		_thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Ponderer");
+				t.setDaemon(true);//never keeps the program open
+				t.setPriority(Thread.MIN_PRIORITY);//the user interface comes first while the opponent thinks
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Stops pondering, chooses a move for the board and starts pondering the replies to it
+	 */
+	@Override
+	public int bestMove(Board b) {
+		stop();
+		TranspositionTable table = _context.table();
+		if(table != null)//even a move played straight from pondering leaves the other replies behind
+			table.newSearch();
+		int reply = reply(b);
+		int move;
+		if(reply >= 0 && (_depth[reply] >= _lastDepth || decided(reply))) {
+			move = _move[reply];
+			_instant++;
+		}
+		else {
+			move = _engine.bestMove(b);
+			if(!_engine.shortcut())//a move that took no real search says nothing about how deep the player gets
+				_lastDepth = _engine.depthReached();
+		}
+		ponder(b, move);
+		return move;
+	}
+	//returns the pondered reply that led to the board, or -1 if it was not one of them
+	private int reply(Board b) {
+		long key = b.hash();
+		for(int col = 0; col < _replyKey.length; col++) {
+			if(_depth[col] > 0 && _replyKey[col] == key)
+				return col;
+		}
+		return -1;
+	}
+	//returns true if pondering found a forced win or loss after the reply
+	private boolean decided(int reply) {
+		return _depth[reply] > 0 && (_value[reply] == GTN.P1_WIN || _value[reply] == GTN.P2_WIN);
+	}
+	//starts pondering the replies to move on the board on the background thread
+	private void ponder(Board b, int move) {
+		final Board board = b.copy();
+		board.place(board.lastPiece().next(), move);
+		int cols = board.columnsOnBoard();
+		_replyKey = new long[cols];
+		_move = new int[cols];
+		_value = new int[cols];
+		_depth = new int[cols];
+		if(board.gameWon() || board.fullBoard())
+			return;
+		for(int col = 0; col < cols; col++) {
+			if(board.place(board.lastPiece().next(), col)) {
+				_replyKey[col] = board.hash();
+				board.undo();
+			}
+		}
+		if(_shutdown)
+			return;
+		_stop = false;
+		try {
+			_pondering = _thread.submit(new Runnable() {
+				@Override
+				public void run() {
+					search(board);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			_pondering = null;//shut down by another thread in the meantime
+		}
+	}
+	//searches the replies to the board one depth at a time until told to stop or there is nothing left to learn
+	private void search(Board b) {
+		Piece opponent = b.lastPiece().next();
+		int cols = b.columnsOnBoard();
+		int maxDepth = b.rowsOnBoard()*cols - b.piecesPlayed() - 1;
+		if(_engine.maxDepth() > 0 && _engine.maxDepth() < maxDepth)
+			maxDepth = _engine.maxDepth();
+		for(int depth = 1; depth <= maxDepth; depth++) {
+			for(int i = 0; i < cols; i++) {
+				int col = cols/2 + ((i%2 == 0) ? i/2 : -(i+1)/2);//likely replies from the center out first
+				if(b.isFull(col) || decided(col))
+					continue;
+				b.place(opponent, col);
+				if(!b.gameWon() && !b.fullBoard()) {
+					_context.clearLimits();
+					if(_stop) {//checked after clearLimits so a stop() that came in first is never lost
+						b.undo();
+						return;
+					}
+					GTN tree = new GTN(b, 0, depth, _context);
+					if(_context.stopped()) {
+						b.undo();
+						return;
+					}
+					_move[col] = tree.getBestMove();
+					_value[col] = tree.evaluate();
+					_depth[col] = depth;
+				}
+				b.undo();
+			}
+		}
+	}
+	/**
+	 * Stops pondering and waits for the background search to let go of the context
+	 */
+	public void stop() {
+		if(_pondering == null)
+			return;
+		_stop = true;
+		_context.stop();
+		try {
+			_pondering.get();
+		} catch(Exception e) {
+			throw new IllegalStateException("Pondering failed", e);
+		}
+		_pondering = null;
+		_context.clearLimits();
+	}
+	/**
+	 * @return - true if the background search is still going
+	 */
+	public boolean pondering() {
+		return _pondering != null && !_pondering.isDone();
+	}
+	/**
+	 * @param b - a board one move after the last board this player moved on
+	 * @return - the depth pondering reached on the board, or 0 if it was not pondered
+	 */
+	public int ponderedDepth(Board b) {
+		int reply = reply(b);
+		return reply < 0 ? 0 : _depth[reply];
+	}
+	/**
+	 * @return - the number of moves played straight from pondering without searching
+	 */
+	public long instantMoves() {
+		return _instant;
+	}
+	/**
+	 * Stops pondering for good, after which the player can no longer be used
+	 * Unlike stop() this does not wait, so it can be called from any thread, even while a move is being chosen.
+	 */
+	public void shutdown() {
+		_shutdown = true;
+		_stop = true;
+		_context.stop();
+		_thread.shutdownNow();
+	}
+}
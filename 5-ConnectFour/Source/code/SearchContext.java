@@ -0,0 +1,375 @@
+package code;
+
+/**
+ * The state shared by every node of a game tree search
+ * Keeps the move ordering heuristics used to make alpha-beta pruning cut off as much of the tree as possible:
+ * columns are tried from the center out, with killer moves and moves with a good history tried first.
+ * Also holds the transposition table, which remembers positions that were already searched,
+ * and the limits on how long a search may run.
+ * A context can be reused between searches so that later searches benefit from what earlier ones learned.
+ * @author Zach Kemphues
+ */
+public class SearchContext {
+	private static final int DEFAULT_TABLE_BITS = 18;//2^18 entries take 4MB
+	private static final int HINT_BONUS = 1 << 26; //the best move from an earlier search is always tried first
+	private static final int KILLERS = 2; //killer moves remembered for each ply
+	private static final int KILLER_BONUS = 1 << 24; //killer moves are always tried before any history move
+	private static final int HISTORY_LIMIT = 1 << 20; //history scores are halved once one reaches this
+	private static final int NO_MOVE = -1;
+	private static final int CHECK_INTERVAL = 1024; //nodes searched between checks of the limits, must be a power of 2
+	static final int FRAME_SIZE = 8; //the ints of search state kept for each ply, laid out by GTN
+
+	private final int NUM_COLS;
+	private int[] _center; //the columns in order from the center out
+	private int[][] _moves; //the ordered move list for each ply
+	private int[][] _scores; //the ordering score of each move in the move list for each ply
+	private int[][] _killer; //moves that caused a cutoff at each ply
+	private int[][] _frames; //the state of the node being searched at each ply, so the search needs no call stack
+	private int[][] _history; //how often each column caused a cutoff for each player, weighted by remaining depth
+	private TranspositionTable _table;
+	private OpeningBook _book;
+	private Solver _solver;
+	private SolvedDatabase _database;
+	private boolean _threatAnalysis; //true to prove positions won from their threats instead of searching them
+	private ThreatAnalysis _threats; //the analysis for the size of board last searched, or null
+	private int _solverCells; //the solver is used once this many cells or fewer are empty
+	private long _nodes; //nodes searched since the limits were set
+	private long _totalNodes; //nodes searched before the limits were last set
+	private boolean _timed;
+	private long _deadline; //System.nanoTime() at which the search must stop
+	private long _nodeLimit; //the number of nodes at which the search must stop, or 0 for no limit
+	private boolean _stopped;
+	private volatile boolean _stopRequested; //set by another thread to stop the search
+
+	/**
+	 * Creates a context for searching boards with the given number of columns, with a depth-preferred transposition table
+	 * @param cols - the number of columns on the board
+	 */
+	public SearchContext(int cols) {
+		this(cols, new TranspositionTable(DEFAULT_TABLE_BITS, TranspositionTable.DEPTH_PREFERRED));
+	}
+	/**
+	 * Creates a context for searching boards with the given number of columns
+	 * @param cols - the number of columns on the board
+	 * @param table - the transposition table to use, or null to search without one
+	 */
+	public SearchContext(int cols, TranspositionTable table) {
+		NUM_COLS = cols;
+		_table = table;
+		_center = new int[cols];
+		for(int i = 0; i < cols; i++) //alternate around the center, ie. 3 2 4 1 5 0 6 for 7 columns
+			_center[i] = cols/2 + ((i%2 == 0) ? i/2 : -(i+1)/2);
+		_history = new int[2][cols];
+		_moves = new int[0][];
+		_scores = new int[0][];
+		_killer = new int[0][];
+		_frames = new int[0][];
+	}
+	/**
+	 * Prepares the context for a new search, making room for plies levels of the tree
+	 * History scores are kept but aged so that recent searches count more
+	 * @param plies - the number of plies that will be searched
+	 */
+	public void prepare(int plies) {
+		if(_moves.length <= plies) {
+			int[][] moves = new int[plies + 1][];
+			int[][] scores = new int[plies + 1][];
+			int[][] killer = new int[plies + 1][];
+			int[][] frames = new int[plies + 1][];
+			for(int p = 0; p <= plies; p++) {
+				moves[p] = new int[NUM_COLS];
+				scores[p] = new int[NUM_COLS];
+				killer[p] = new int[KILLERS];
+				frames[p] = new int[FRAME_SIZE];
+			}
+			_moves = moves;
+			_scores = scores;
+			_killer = killer;
+			_frames = frames;
+		}
+		for(int p = 0; p < _killer.length; p++)
+			for(int k = 0; k < KILLERS; k++)
+				_killer[p][k] = NO_MOVE;
+		for(int[] h : _history)
+			for(int c = 0; c < NUM_COLS; c++)
+				h[c] >>= 1;
+	}
+	/**
+	 * Forgets what earlier searches learned, emptying the transposition table and the move ordering history,
+	 * so the next search runs the way it would with a new context but without allocating a new table
+	 */
+	public void forget() {
+		if(_table != null)
+			_table.clear();
+		for(int[] h : _history)
+			for(int c = 0; c < NUM_COLS; c++)
+				h[c] = 0;
+	}
+	/**
+	 * Fills the move list for the ply with every playable column, best candidates first
+	 * @param b - the board being searched
+	 * @param ply - the distance from the root of the search
+	 * @param p1Turn - true if Player1 is the one moving
+	 * @param hint - a column to try before any other, or -1 if there is none
+	 * @return - the number of playable columns in the move list
+	 */
+	public int orderMoves(Board b, int ply, boolean p1Turn, int hint) {
+		int[] moves = _moves[ply];
+		int[] scores = _scores[ply];
+		int[] history = _history[p1Turn ? 0 : 1];
+		int count = 0;
+		for(int i = 0; i < NUM_COLS; i++) {
+			int col = _center[i];
+			if(b.isFull(col))
+				continue;
+			int score = history[col];
+			if(col == hint)
+				score += HINT_BONUS;
+			else if(col == _killer[ply][0])
+				score += 2*KILLER_BONUS;
+			else if(col == _killer[ply][1])
+				score += KILLER_BONUS;
+			//insertion sort, equal scores stay in center-first order
+			int j = count++;
+			while(j > 0 && scores[j-1] < score) {
+				moves[j] = moves[j-1];
+				scores[j] = scores[j-1];
+				j--;
+			}
+			moves[j] = col;
+			scores[j] = score;
+		}
+		return count;
+	}
+	/**
+	 * Drops moves from the move list for the ply that can't be better than the ones kept, using the threats on the board.
+	 * If the player can win right away only the winning moves are kept.  With at least two plies left to search,
+	 * if the opponent could win next only the moves blocking them are kept, and otherwise moves that let the opponent win
+	 * by playing on top of them are dropped, unless every move does.  A search sees that every dropped move loses,
+	 * so the value of the position is the same, it just gets there without searching them.
+	 * Boards that don't fit in one long keep every move.
+	 * @param b - the board being searched
+	 * @param ply - the distance from the root of the search
+	 * @param count - the number of moves in the list
+	 * @param p1Turn - true if Player1 is the one moving
+	 * @param depth - the number of plies left to search, including this move
+	 * @return - the number of moves left in the list, which keep their order
+	 */
+	public int pruneMoves(Board b, int ply, int count, boolean p1Turn, int depth) {
+		if(!b.compact() || count <= 1)
+			return count;
+		long playable = b.playableCells();
+		long wins = b.winningCells(p1Turn) & playable;
+		if(wins != 0)
+			return keep(b, ply, count, wins);
+		if(depth < 2)
+			return count;
+		long losses = b.winningCells(!p1Turn);
+		if((losses & playable) != 0)
+			return keep(b, ply, count, losses & playable);
+		long safe = playable & ~(losses >>> 1);
+		if(safe == 0 || safe == playable)
+			return count;
+		return keep(b, ply, count, safe);
+	}
+	/**
+	 * Finds a move that has to be played: one that wins right away, the only way to stop the opponent winning next,
+	 * or the only move that doesn't let the opponent win by playing on top of it
+	 * @param b - a board with at least one playable column
+	 * @return - the column of the move, or -1 if there is a choice to make or the board doesn't fit in one long
+	 */
+	public int forcedMove(Board b) {
+		if(!b.compact())
+			return NO_MOVE;
+		boolean p1Turn = b.lastPiece() != Piece.P1;
+		long playable = b.playableCells();
+		long forced = b.winningCells(p1Turn) & playable;
+		if(forced == 0) {
+			long losses = b.winningCells(!p1Turn);
+			forced = losses & playable;
+			if(forced == 0)
+				forced = playable & ~(losses >>> 1);
+			if(Long.bitCount(forced) != 1)
+				return NO_MOVE;
+		}
+		return Long.numberOfTrailingZeros(forced)/(b.rowsOnBoard() + 1);
+	}
+	//keeps the moves of the list for the ply that land in one of the cells, in the same order
+	private int keep(Board b, int ply, int count, long cells) {
+		int[] moves = _moves[ply];
+		int colBits = b.rowsOnBoard() + 1;
+		long column = (1L << colBits) - 1;
+		int kept = 0;
+		for(int i = 0; i < count; i++) {
+			if((cells & (column << moves[i]*colBits)) != 0)
+				moves[kept++] = moves[i];
+		}
+		return kept;
+	}
+	/**
+	 * Limits how long searches using this context may run, and resets the node count and any earlier call to stop()
+	 * Once a limit is reached the search stops and its result should be thrown away
+	 * @param millis - the number of milliseconds from now the search may run for, or 0 for no limit
+	 * @param nodes - the number of nodes that may be searched, or 0 for no limit
+	 */
+	public void setLimits(long millis, long nodes) {
+		_timed = millis > 0;
+		_deadline = System.nanoTime() + millis*1000000;
+		_nodeLimit = nodes;
+		_totalNodes += _nodes;
+		_nodes = 0;
+		_stopped = false;
+		_stopRequested = false;
+	}
+	/**
+	 * Removes any limits on the search
+	 */
+	public void clearLimits() {
+		setLimits(0, 0);
+	}
+	/**
+	 * Counts a node of the search, and checks the limits every so often
+	 * @return - true if the search must stop
+	 */
+	public boolean countNode() {
+		_nodes++;
+		if((_nodes & (CHECK_INTERVAL - 1)) == 0 && !_stopped)
+			_stopped = _stopRequested || (_nodeLimit > 0 && _nodes >= _nodeLimit) || (_timed && System.nanoTime() - _deadline >= 0);
+		return _stopped;
+	}
+	/**
+	 * Stops the search using this context as soon as possible, can be called from any thread
+	 */
+	public void stop() {
+		_stopRequested = true;
+	}
+	/**
+	 * @return - true if the search ran into one of its limits, in which case its result is not valid
+	 */
+	public boolean stopped() {
+		return _stopped;
+	}
+	/**
+	 * @return - the number of nodes searched since the limits were last set
+	 */
+	public long nodes() {
+		return _nodes;
+	}
+	/**
+	 * @return - the number of nodes searched since the context was created
+	 */
+	public long totalNodes() {
+		return _totalNodes + _nodes;
+	}
+	/**
+	 * Sets the opening book to look positions up in before searching them
+	 * @param book - the book, or null to always search
+	 */
+	public void setBook(OpeningBook book) {
+		_book = book;
+	}
+	/**
+	 * @return - the opening book positions are looked up in, or null if there is none
+	 */
+	public OpeningBook book() {
+		return _book;
+	}
+	/**
+	 * Sets the solver used to play perfectly near the end of the game
+	 * @param solver - the solver, or null to always search
+	 * @param emptyCells - the solver is used instead of searching once this many cells or fewer are empty
+	 */
+	public void setSolver(Solver solver, int emptyCells) {
+		_solver = solver;
+		_solverCells = emptyCells;
+	}
+	/**
+	 * @param b - a board
+	 * @return - the solver to use for the board, or null if the board should be searched
+	 */
+	public Solver solverFor(Board b) {
+		if(_solver == null || !_solver.fits(b))
+			return null;
+		if(b.rowsOnBoard()*b.columnsOnBoard() - b.piecesPlayed() > _solverCells)
+			return null;
+		return _solver;
+	}
+	/**
+	 * Sets the database of solved positions used instead of searching on boards it holds
+	 * @param database - the database, or null to always search
+	 */
+	public void setDatabase(SolvedDatabase database) {
+		_database = database;
+	}
+	/**
+	 * @param b - a board
+	 * @return - the database that holds the board, or null if there isn't one
+	 */
+	public SolvedDatabase databaseFor(Board b) {
+		if(_database == null || !_database.fits(b))
+			return null;
+		return _database;
+	}
+	/**
+	 * Turns on proving positions won from how the empty cells can be shared out, see ThreatAnalysis
+	 * A position the player who just moved is proved to win is scored as a win without searching it any further.
+	 * That saves a lot of searching once most columns are blocked, but a win found that way may be scored as one found by searching,
+	 * so the search can choose a different move than a minimax search would between moves that both win.
+	 * @param on - true to use the analysis, false to always search
+	 */
+	public void setThreatAnalysis(boolean on) {
+		_threatAnalysis = on;
+		if(!on)
+			_threats = null;
+	}
+	/**
+	 * @param b - a board
+	 * @return - the threat analysis to judge the board with, or null if it should be searched
+	 */
+	public ThreatAnalysis threatsFor(Board b) {
+		if(!_threatAnalysis || !b.compact())
+			return null;
+		if(_threats == null || !_threats.fits(b))
+			_threats = new ThreatAnalysis(b.columnsOnBoard(), b.rowsOnBoard(), b.winLength());
+		return _threats;
+	}
+	/**
+	 * @return - the transposition table used by the search, or null if there is none
+	 */
+	public TranspositionTable table() {
+		return _table;
+	}
+	/**
+	 * @param ply - the distance from the root of the search
+	 * @return - the move list filled by the last call to orderMoves for the ply
+	 */
+	public int[] moves(int ply) {
+		return _moves[ply];
+	}
+	/**
+	 * @param ply - the distance from the root of the search
+	 * @return - FRAME_SIZE ints for the search to keep the state of the node at the ply in, which nothing else touches
+	 */
+	int[] frame(int ply) {
+		return _frames[ply];
+	}
+	/**
+	 * Records that playing in col caused a cutoff so that it will be tried earlier next time
+	 * @param ply - the distance from the root of the search
+	 * @param col - the column that caused the cutoff
+	 * @param p1Turn - true if Player1 was the one moving
+	 * @param depth - the number of plies that were left to search below the move
+	 */
+	public void cutoff(int ply, int col, boolean p1Turn, int depth) {
+		int[] killer = _killer[ply];
+		if(killer[0] != col) {
+			killer[1] = killer[0];
+			killer[0] = col;
+		}
+		int[] history = _history[p1Turn ? 0 : 1];
+		history[col] += depth*depth;
+		if(history[col] >= HISTORY_LIMIT)
+			for(int c = 0; c < NUM_COLS; c++)
+				history[c] >>= 1;
+	}
+}
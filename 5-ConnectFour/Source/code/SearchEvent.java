@@ -0,0 +1,38 @@
+package code;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for each game tree search, recorded with "java -XX:StartFlightRecording ..."
+ * When no recording is running the event is never filled in or committed, so it costs next to nothing.
+ * @author Zach Kemphues
+ */
+@Name("connectfour.Search")
+@Label("Game Tree Search")
+@Category("Connect Four")
+@Description("A search of the game tree for the best move")
+class SearchEvent extends jdk.jfr.Event {
+	@Label("Depth")
+	int depth;
+	@Label("Pieces Played")
+	int piecesPlayed;
+	@Label("Nodes")
+	long nodes;
+	@Label("Leaves")
+	long leaves;
+	@Label("Cutoffs")
+	long cutoffs;
+	@Label("Max Ply")
+	int maxPly;
+	@Label("Table Hits")
+	long tableHits;
+	@Label("Best Move")
+	int bestMove;
+	@Label("Value")
+	int value;
+	@Label("Stopped")
+	@Description("The search ran out of time or nodes, so its result was thrown away")
+	boolean stopped;
+}
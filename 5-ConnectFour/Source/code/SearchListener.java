@@ -0,0 +1,16 @@
+package code;
+
+/**
+ * Receives the results of a search as it goes, so a user interface can show what the AI is thinking
+ * Listeners are called on the searching thread.
+ * @author Zach Kemphues
+ */
+public interface SearchListener {
+	/**
+	 * Called each time a search finishes another depth
+	 * @param depth - the depth that was finished
+	 * @param move - the best move found at that depth
+	 * @param value - the value of the move, as returned by GTN.evaluate()
+	 */
+	public void searched(int depth, int move, int value);
+}
@@ -0,0 +1,142 @@
+package code;
+
+/**
+ * What a search did, to find out why a move took as long as it did
+ * A GTN has stats for its own search, and an IterativeDeepening player adds up the stats of every depth it searched for its last move.
+ * Transposition table hits are counted by the table, so when several threads share one table they include the other threads' hits.
+ * @author Zach Kemphues
+ */
+public class SearchStats {
+	private final int DEPTH;
+	private final long NODES;
+	private final long LEAVES;
+	private final long CUTOFFS;
+	private final int MAX_PLY;
+	private final long TABLE_HITS;
+	private final long[] ITERATION_NANOS;
+
+	/**
+	 * Creates the stats of a single search
+	 * @param depth - the depth the search was asked to go to
+	 * @param nodes - the number of nodes visited
+	 * @param leaves - the number of boards evaluated
+	 * @param cutoffs - the number of times the rest of a node's moves were pruned
+	 * @param maxPly - the deepest ply a node was visited at
+	 * @param tableHits - the number of positions found in the transposition table
+	 * @param nanos - the time the search took
+	 */
+	public SearchStats(int depth, long nodes, long leaves, long cutoffs, int maxPly, long tableHits, long nanos) {
+		this(depth, nodes, leaves, cutoffs, maxPly, tableHits, new long[] {nanos});
+	}
+	private SearchStats(int depth, long nodes, long leaves, long cutoffs, int maxPly, long tableHits, long[] iterationNanos) {
+		DEPTH = depth;
+		NODES = nodes;
+		LEAVES = leaves;
+		CUTOFFS = cutoffs;
+		MAX_PLY = maxPly;
+		TABLE_HITS = tableHits;
+		ITERATION_NANOS = iterationNanos;
+	}
+	/**
+	 * Adds up the stats of the searches an iterative deepening search made, one per depth
+	 * @param iterations - the stats of each search, shallowest first
+	 * @param count - the number of searches
+	 * @param depth - the deepest search that finished
+	 * @return - stats covering all of the searches
+	 */
+	public static SearchStats combine(SearchStats[] iterations, int count, int depth) {
+		long nodes = 0;
+		long leaves = 0;
+		long cutoffs = 0;
+		int maxPly = 0;
+		long hits = 0;
+		long[] nanos = new long[count];
+		for(int i = 0; i < count; i++) {
+			SearchStats s = iterations[i];
+			nodes += s.NODES;
+			leaves += s.LEAVES;
+			cutoffs += s.CUTOFFS;
+			maxPly = Math.max(maxPly, s.MAX_PLY);
+			hits += s.TABLE_HITS;
+			nanos[i] = s.nanos();
+		}
+		return new SearchStats(depth, nodes, leaves, cutoffs, maxPly, hits, nanos);
+	}
+	/**
+	 * @return - the depth searched to
+	 */
+	public int depth() {
+		return DEPTH;
+	}
+	/**
+	 * @return - the number of nodes visited, including leaves
+	 */
+	public long nodes() {
+		return NODES;
+	}
+	/**
+	 * @return - the number of boards evaluated at the bottom of the tree or because the game was over
+	 */
+	public long leaves() {
+		return LEAVES;
+	}
+	/**
+	 * @return - the number of beta cutoffs, where a node stopped searching its moves early
+	 */
+	public long cutoffs() {
+		return CUTOFFS;
+	}
+	/**
+	 * @return - the deepest ply below the root any node was visited at
+	 */
+	public int maxPly() {
+		return MAX_PLY;
+	}
+	/**
+	 * @return - the number of probes that found their position in the transposition table
+	 */
+	public long tableHits() {
+		return TABLE_HITS;
+	}
+	/**
+	 * @return - the number of searches, one per depth for an iterative deepening search
+	 */
+	public int iterations() {
+		return ITERATION_NANOS.length;
+	}
+	/**
+	 * @param i - which search, starting from 0 for the shallowest
+	 * @return - the time in milliseconds that search took
+	 */
+	public double iterationMillis(int i) {
+		return ITERATION_NANOS[i]/1e6;
+	}
+	/**
+	 * @return - the total time in nanoseconds of every search
+	 */
+	public long nanos() {
+		long total = 0;
+		for(long n : ITERATION_NANOS)
+			total += n;
+		return total;
+	}
+	/**
+	 * @return - the number of nodes visited each second
+	 */
+	public double nodesPerSecond() {
+		long nanos = nanos();
+		return nanos == 0 ? 0 : NODES*1e9/nanos;
+	}
+	
+	@Override
+	public String toString() {
+		String s = String.format("depth %d: %d nodes, %d leaves, %d cutoffs, max ply %d, %d table hits, %.1f ms, %.0f nodes/s",
+				DEPTH, NODES, LEAVES, CUTOFFS, MAX_PLY, TABLE_HITS, nanos()/1e6, nodesPerSecond());
+		if(ITERATION_NANOS.length > 1) {
+			s += ", iterations (ms):";
+			for(int i = 0; i < ITERATION_NANOS.length; i++)
+				s += String.format(" %.1f", iterationMillis(i));
+		}
+		return s;
+	}
+}
@@ -0,0 +1,84 @@
+package code;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A transposition table that can be used by many search threads at once without locking
+ * Each slot stores the key XORed with the data next to the data itself.  Both words are read and written atomically,
+ * but a slot can still be caught halfway through being rewritten by another thread.  In that case the key recovered
+ * from the two words does not match, and the probe is simply treated as a miss instead of returning a torn entry.
+ * @author Zach Kemphues
+ */
+public class SharedTranspositionTable extends TranspositionTable {
+	private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private LongAdder _hits;
+	private LongAdder _misses;
+	private LongAdder _collisions;
+
+	/**
+	 * Creates an empty table with 2^bits entries
+	 * @param bits - the log base 2 of the number of entries, each entry takes 16 bytes
+	 * @param policy - DEPTH_PREFERRED or ALWAYS_REPLACE
+	 */
+	public SharedTranspositionTable(int bits, int policy) {
+		super(bits, policy);
+		_hits = new LongAdder();
+		_misses = new LongAdder();
+		_collisions = new LongAdder();
+	}
+
+	@Override
+	public long probe(long key) {
+		int i = index(key);
+		long data = (long)SLOT.getOpaque(_data, i);
+		long check = (long)SLOT.getOpaque(_keys, i);
+		if(data != 0 && (check ^ data) == key) {
+			_hits.increment();
+			return data;
+		}
+		_misses.increment();
+		if(data != 0)
+			_collisions.increment();
+		return 0;
+	}
+
+	@Override
+	public void store(long key, int depth, int score, int move, int bound) {
+		int i = index(key);
+		long old = (long)SLOT.getOpaque(_data, i);
+		int generation = _generation;//a thread may see a new generation a little late, which only keeps an old entry a little longer
+		if(POLICY == DEPTH_PREFERRED && old != 0 && ((long)SLOT.getOpaque(_keys, i) ^ old) != key && generation(old) == generation && depth(old) > depth)
+			return;
+		long data = pack(depth, score, move, bound, generation);
+		SLOT.setOpaque(_keys, i, key ^ data);
+		SLOT.setOpaque(_data, i, data);
+	}
+
+	@Override
+	public void clear() {
+		for(int i = 0; i <= MASK; i++) {
+			SLOT.setOpaque(_keys, i, 0L);
+			SLOT.setOpaque(_data, i, 0L);
+		}
+		_hits.reset();
+		_misses.reset();
+		_collisions.reset();
+	}
+
+	@Override
+	public long hits() {
+		return _hits.sum();
+	}
+
+	@Override
+	public long misses() {
+		return _misses.sum();
+	}
+
+	@Override
+	public long collisions() {
+		return _collisions.sum();
+	}
+}
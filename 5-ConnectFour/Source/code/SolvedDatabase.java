@@ -0,0 +1,475 @@
+package code;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The result of every position of four in a row on a small board, so the computer can play perfectly without searching at all
+ * Positions are numbered without gaps by the number of pieces on the board, then the height of each column, then the rank of
+ * which of the pieces belong to Player1 among all the ways Player1 could have that many of them.  Each number holds 2 bits:
+ * whether the player moving wins, loses or draws with perfect play, or that it is not a position because someone already won.
+ * The values are worked out backwards, from the full board down to the empty board, a number of pieces at a time,
+ * with each number of pieces split over every core.  They are written in blocks of 2^12 positions compressed with Deflate,
+ * which are small enough to uncompress in a few microseconds.  The blocks are read through a memory-mapped view of the file,
+ * and the most recently used ones are kept uncompressed.
+ * On one core a 5x4 board takes 2 seconds and 1MB, 6x4 and 5x5 half a minute and about 20MB, and 6x5 should take about
+ * an hour and 1GB.  Anything bigger has too many positions.
+ * @author Zach Kemphues
+ */
+public class SolvedDatabase implements Engine, Closeable {
+	public static final int NOT_A_POSITION = 0;
+	public static final int WIN = 1;
+	public static final int LOSS = 2;
+	public static final int DRAW = 3;
+	private static final int MAGIC = 0x43345344;//"C4SD"
+	private static final int HEADER_SIZE = 28;//magic, columns, rows, block bits, number of blocks and where the block table starts
+	private static final int BLOCK_BITS = 12;
+	private static final int BLOCK = 1 << BLOCK_BITS; //positions in a block, a multiple of the 32 held in each long
+	private static final int CACHED_BLOCKS = 256; //uncompressed blocks kept, must be a power of 2
+
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int COL_BITS;
+	private final int CELLS;
+	private final int[] ORDER; //the columns from the center out
+	private final int[] SHIFTS; //the distance in bits between neighbouring cells of a line, for each direction a line can go
+	private long[][] _choose; //_choose[n][k] is n choose k
+	private long[] _vectorOffset; //the number of the first position with each set of column heights among those with as many pieces
+	private int[][] _levelVectors; //the sets of column heights with each number of pieces, each written as a number in base rows+1
+	private long[] _levelSize; //the number of positions with each number of pieces
+	private long[] _levelStart; //the number of the first position with each number of pieces, always the start of a block
+
+	private RandomAccessFile _file;
+	private MappedByteBuffer _map;
+	private int _blocks;
+	private long _tableOffset;
+	private Inflater _inflater;
+	private long[] _cachedBlock; //the block held in each cache slot, or -1
+	private long[][] _cache;
+	private byte[] _compressed;
+
+	/**
+	 * Opens a database written by generate()
+	 * @param f - the database file
+	 * @throws IOException - if the file cannot be read or is not a database
+	 */
+	public SolvedDatabase(File f) throws IOException {
+		_file = new RandomAccessFile(f, "r");
+		FileChannel channel = _file.getChannel();
+		if(channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+			close();
+			throw new IOException(f + " is not a database that can be mapped");
+		}
+		_map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if(_map.getInt(0) != MAGIC || _map.getInt(12) != BLOCK_BITS) {
+			close();
+			throw new IOException(f + " is not a database");
+		}
+		NUM_COLS = _map.getInt(4);
+		NUM_ROWS = _map.getInt(8);
+		COL_BITS = NUM_ROWS + 1;
+		CELLS = NUM_COLS*NUM_ROWS;
+		ORDER = center(NUM_COLS);
+		SHIFTS = new int[] {1, COL_BITS, COL_BITS - 1, COL_BITS + 1};
+		_blocks = _map.getInt(16);
+		_tableOffset = _map.getLong(20);
+		initIndex();
+		if(_blocks != _levelStart[CELLS + 1]/BLOCK || _tableOffset + 12L*_blocks != channel.size()) {
+			close();
+			throw new IOException(f + " is truncated");
+		}
+		_inflater = new Inflater();
+		_cachedBlock = new long[CACHED_BLOCKS];
+		Arrays.fill(_cachedBlock, -1);
+		_cache = new long[CACHED_BLOCKS][BLOCK/32];
+		_compressed = new byte[0];
+	}
+	//prepares to number the positions of a board without a file, for generate()
+	private SolvedDatabase(int cols, int rows) {
+		if(!new Board(cols, rows).compact())
+			throw new IllegalArgumentException("A " + cols + "x" + rows + " board does not fit in a 64 bit bitboard");
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		COL_BITS = rows + 1;
+		CELLS = cols*rows;
+		ORDER = center(cols);
+		SHIFTS = new int[] {1, COL_BITS, COL_BITS - 1, COL_BITS + 1};
+		initIndex();
+	}
+	//returns the columns in order from the center out
+	private static int[] center(int cols) {
+		int[] order = new int[cols];
+		for(int i = 0; i < cols; i++)
+			order[i] = cols/2 + ((i%2 == 0) ? i/2 : -(i+1)/2);
+		return order;
+	}
+	//works out where the positions of each number of pieces and each set of column heights are numbered from
+	private void initIndex() {
+		_choose = new long[CELLS + 1][CELLS + 1];
+		for(int n = 0; n <= CELLS; n++) {
+			_choose[n][0] = 1;
+			for(int k = 1; k <= n; k++)
+				_choose[n][k] = _choose[n-1][k-1] + _choose[n-1][k];
+		}
+		int vectors = 1;
+		for(int c = 0; c < NUM_COLS; c++)
+			vectors *= COL_BITS;
+		_vectorOffset = new long[vectors];
+		_levelSize = new long[CELLS + 1];
+		int[] count = new int[CELLS + 1];
+		for(int v = 0; v < vectors; v++)
+			count[pieces(v)]++;
+		_levelVectors = new int[CELLS + 1][];
+		for(int n = 0; n <= CELLS; n++)
+			_levelVectors[n] = new int[count[n]];
+		Arrays.fill(count, 0);
+		for(int v = 0; v < vectors; v++) {//in increasing order, so each level's vectors are sorted
+			int n = pieces(v);
+			_levelVectors[n][count[n]++] = v;
+			_vectorOffset[v] = _levelSize[n];
+			_levelSize[n] += _choose[n][(n + 1)/2];
+		}
+		_levelStart = new long[CELLS + 2];
+		for(int n = 0; n <= CELLS; n++)
+			_levelStart[n + 1] = _levelStart[n] + (_levelSize[n] + BLOCK - 1)/BLOCK*BLOCK;
+	}
+	//returns the number of pieces on the board for a set of column heights
+	private int pieces(int vector) {
+		int n = 0;
+		for(int c = 0; c < NUM_COLS; c++) {
+			n += vector%COL_BITS;
+			vector /= COL_BITS;
+		}
+		return n;
+	}
+	//returns the number of a position among those with as many pieces, or -1 if Player1 has the wrong number of pieces
+	//the pieces are taken column by column from the bottom up, and Player1's ones numbered by the combinatorial number system
+	private long levelIndex(long p1, long mask) {
+		int vector = 0;
+		int radix = 1;
+		int n = 0;
+		int ones = 0;
+		long rank = 0;
+		for(int c = 0; c < NUM_COLS; c++) {
+			long column = mask >>> c*COL_BITS;
+			for(int r = 0; r < NUM_ROWS && (column >>> r & 1) != 0; r++) {
+				if((p1 >>> c*COL_BITS + r & 1) != 0)
+					rank += _choose[n][++ones];
+				n++;
+			}
+			vector += Long.bitCount(mask & ((1L << COL_BITS) - 1) << c*COL_BITS)*radix;
+			radix *= COL_BITS;
+		}
+		if(ones != (n + 1)/2)
+			return -1;
+		return _vectorOffset[vector] + rank;
+	}
+	//returns true if the pieces have four in a row in any direction
+	private boolean fourInARow(long pieces) {
+		for(int s : SHIFTS) {
+			long pairs = pieces & (pieces >>> s);
+			if((pairs & (pairs >>> 2*s)) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Works out the result of every position on a board and writes them to a file
+	 * @param f - the file to write
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @throws IOException - if the file cannot be written
+	 */
+	public static void generate(File f, int cols, int rows) throws IOException {
+		new SolvedDatabase(cols, rows).write(f);
+	}
+	//solves every position, most pieces first, writing the blocks of each number of pieces as soon as they are done
+	private void write(File f) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(f, "rw");
+		try {
+			out.setLength(0);
+			int blocks = (int)(_levelStart[CELLS + 1]/BLOCK);
+			long[] blockOffset = new long[blocks];
+			int[] blockLength = new int[blocks];
+			out.seek(HEADER_SIZE);
+			long[] next = null; //the values of the positions with one more piece
+			for(int n = CELLS; n >= 0; n--) {
+				long[] values = solveLevel(n, next);
+				Deflater deflater = new Deflater();
+				ByteBuffer raw = ByteBuffer.allocate(BLOCK/4).order(ByteOrder.LITTLE_ENDIAN);
+				byte[] compressed = new byte[BLOCK];
+				for(int start = 0; start < values.length; start += BLOCK/32) {
+					raw.clear();
+					raw.asLongBuffer().put(values, start, Math.min(BLOCK/32, values.length - start));
+					deflater.reset();
+					deflater.setInput(raw.array());
+					deflater.finish();
+					int length = 0;
+					while(!deflater.finished()) {
+						if(length == compressed.length)
+							compressed = Arrays.copyOf(compressed, 2*length);
+						length += deflater.deflate(compressed, length, compressed.length - length);
+					}
+					int block = (int)((_levelStart[n] + start*32L)/BLOCK);
+					blockOffset[block] = out.getFilePointer();
+					blockLength[block] = length;
+					out.write(compressed, 0, length);
+				}
+				deflater.end();
+				next = values;
+			}
+			long tableOffset = out.getFilePointer();
+			ByteBuffer table = ByteBuffer.allocate(12*blocks);
+			for(int b = 0; b < blocks; b++)
+				table.putLong(blockOffset[b]).putInt(blockLength[b]);
+			out.write(table.array());
+			out.seek(0);
+			out.writeInt(MAGIC);
+			out.writeInt(NUM_COLS);
+			out.writeInt(NUM_ROWS);
+			out.writeInt(BLOCK_BITS);
+			out.writeInt(blocks);
+			out.writeLong(tableOffset);
+		} finally {
+			out.close();
+		}
+	}
+	//works out the value of every position with n pieces from the values of the positions with n+1, 32 to a long
+	//the positions are split into chunks that start on a long, so the threads never write to the same long
+	private long[] solveLevel(int n, long[] next) {
+		long size = _levelSize[n];
+		if(size > 32L*Integer.MAX_VALUE/2)
+			throw new IllegalStateException("A " + NUM_COLS + "x" + NUM_ROWS + " board has too many positions");
+		long[] values = new long[(int)((size + BLOCK - 1)/BLOCK*BLOCK/32)];
+		int chunks = (int)((size + BLOCK - 1)/BLOCK);
+		IntStream.range(0, chunks).parallel().forEach(chunk -> solveChunk(n, next, values, (long)chunk*BLOCK, Math.min(size, (long)(chunk + 1)*BLOCK)));
+		return values;
+	}
+	//works out the values of positions from up to end with n pieces
+	private void solveChunk(int n, long[] next, long[] values, long from, long end) {
+		int[] vectors = _levelVectors[n];
+		int ones = (n + 1)/2;
+		long count = _choose[n][ones]; //the number of ways to pick Player1's pieces
+		//find the column heights of the first position, the last one numbered at or before it
+		int low = 0;
+		int high = vectors.length - 1;
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if(_vectorOffset[vectors[mid]] <= from)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		int v = low;
+		//find Player1's pieces for the rank, largest first
+		long rank = from - _vectorOffset[vectors[v]];
+		long pick = 0; //bit i is set if Player1 has the i-th piece counting column by column from the bottom
+		for(int j = ones, p = n - 1; j > 0; j--) {
+			while(_choose[p][j] > rank)
+				p--;
+			pick |= 1L << p;
+			rank -= _choose[p][j];
+			p--;
+		}
+		rank = from - _vectorOffset[vectors[v]];
+		long[] cells = cells(vectors[v]);
+		for(long i = from; i < end; i++) {
+			if(rank == count) {//every way of picking Player1's pieces has been done for these column heights
+				v++;
+				cells = cells(vectors[v]);
+				pick = (1L << ones) - 1;
+				rank = 0;
+			}
+			long p1 = 0;
+			long mask = 0;
+			for(int j = 0; j < n; j++) {
+				mask |= cells[j];
+				if((pick >>> j & 1) != 0)
+					p1 |= cells[j];
+			}
+			int value = solvePosition(n, p1, mask, next);
+			values[(int)(i >>> 5)] |= (long)value << 2*(i & 31);
+			//the next way of picking the same number of pieces, which is the next rank
+			if(pick != 0) {
+				long lowest = pick & -pick;
+				long ripple = pick + lowest;
+				pick = (((ripple ^ pick) >>> 2)/lowest) | ripple;
+			}
+			rank++;
+		}
+	}
+	//returns the bit of each piece of a set of column heights, column by column from the bottom up
+	private long[] cells(int vector) {
+		long[] cells = new long[CELLS];
+		int n = 0;
+		for(int c = 0; c < NUM_COLS; c++) {
+			for(int r = 0; r < vector%COL_BITS; r++)
+				cells[n++] = 1L << c*COL_BITS + r;
+			vector /= COL_BITS;
+		}
+		return cells;
+	}
+	//works out the value of a position for the player moving from the values of the positions after each move
+	private int solvePosition(int n, long p1, long mask, long[] next) {
+		long p2 = mask ^ p1;
+		if(fourInARow(p1) || fourInARow(p2))
+			return NOT_A_POSITION;
+		if(n == CELLS)
+			return DRAW;
+		boolean p1Turn = n%2 == 0;
+		int best = LOSS;
+		for(int c = 0; c < NUM_COLS; c++) {
+			long top = 1L << c*COL_BITS + NUM_ROWS - 1;
+			if((mask & top) != 0)
+				continue;//full
+			long move = (mask + (1L << c*COL_BITS)) & ~mask & ((1L << COL_BITS) - 1) << c*COL_BITS;
+			if(fourInARow((p1Turn ? p1 : p2) | move))
+				return WIN;
+			long child = levelIndex(p1Turn ? p1 | move : p1, mask | move);
+			int after = (int)(next[(int)(child >>> 5)] >>> 2*(child & 31)) & 3;
+			if(after == LOSS)
+				return WIN;
+			if(after == DRAW)
+				best = DRAW;
+		}
+		return best;
+	}
+
+	/**
+	 * @param b - a board
+	 * @return - true if the database holds boards the size of b, which must need four in a row to win
+	 */
+	public boolean fits(Board b) {
+		return b.columnsOnBoard() == NUM_COLS && b.rowsOnBoard() == NUM_ROWS && b.winLength() == 4;
+	}
+	/**
+	 * @param b - a board the database fits, that the game is not over on
+	 * @return - WIN, LOSS or DRAW for the player whose turn it is, if both players play perfectly
+	 */
+	public int value(Board b) {
+		if(!fits(b))
+			throw new IllegalArgumentException("This database is for " + NUM_COLS + "x" + NUM_ROWS + " boards");
+		long p1 = b.pieces(true);
+		long mask = p1 | b.pieces(false);
+		return value(b.piecesPlayed(), levelIndex(p1, mask));
+	}
+	//reads the value of a position from its block, uncompressing the block if it is not cached
+	private synchronized int value(int n, long index) {
+		long position = _levelStart[n] + index;
+		long block = position >>> BLOCK_BITS;
+		int slot = (int)(block & (CACHED_BLOCKS - 1));
+		long[] words = _cache[slot];
+		if(_cachedBlock[slot] != block) {
+			int entry = (int)(_tableOffset + 12*block);
+			int offset = (int)_map.getLong(entry);
+			int length = _map.getInt(entry + 8);
+			if(_compressed.length < length)
+				_compressed = new byte[length];
+			_map.get(offset, _compressed, 0, length);
+			byte[] raw = new byte[BLOCK/4];
+			_inflater.reset();
+			_inflater.setInput(_compressed, 0, length);
+			try {
+				_inflater.inflate(raw);
+			} catch(DataFormatException e) {
+				throw new IllegalStateException("Block " + block + " of the database is corrupt", e);
+			}
+			ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words);
+			_cachedBlock[slot] = block;
+		}
+		int i = (int)(position & (BLOCK - 1));
+		return (int)(words[i >>> 5] >>> 2*(i & 31)) & 3;
+	}
+	/**
+	 * Chooses a move that keeps the best result for the player whose turn it is, taking a win right away if there is one
+	 * and trying center columns first between equal moves
+	 */
+	@Override
+	public int bestMove(Board b) {
+		int best = -1;
+		int bestValue = NOT_A_POSITION;
+		for(int col : ORDER) {
+			if(b.isFull(col))
+				continue;
+			b.place(b.lastPiece().next(), col);
+			int value;
+			if(b.gameWon())
+				value = WIN;
+			else if(b.fullBoard())
+				value = DRAW;
+			else
+				value = flip(value(b));
+			b.undo();
+			if(value == WIN)
+				return col;
+			if(best == -1 || (value == DRAW && bestValue == LOSS)) {
+				best = col;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+	//returns the value of a position for the other player
+	private static int flip(int value) {
+		return value == WIN ? LOSS : value == LOSS ? WIN : value;
+	}
+	/**
+	 * @return - the number of positions numbered, including the ones that are not positions
+	 */
+	public long size() {
+		long size = 0;
+		for(long s : _levelSize)
+			size += s;
+		return size;
+	}
+	/**
+	 * Closes the database file
+	 */
+	@Override
+	public void close() throws IOException {
+		_map = null;
+		if(_inflater != null)
+			_inflater.end();
+		_file.close();
+	}
+
+	/**
+	 * Generates a database and prints how big it is
+	 * @param args - the number of columns and rows, then optionally the file to write
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("Usage: SolvedDatabase <columns> <rows> [file]");
+			return;
+		}
+		int cols = Integer.parseInt(args[0]);
+		int rows = Integer.parseInt(args[1]);
+		File f = new File(args.length > 2 ? args[2] : fileName(cols, rows));
+		long start = System.nanoTime();
+		generate(f, cols, rows);
+		SolvedDatabase db = new SolvedDatabase(f);
+		String[] results = {"", "win for Player1", "win for Player2", "draw"};
+		System.out.printf("Wrote %d positions to %s in %d bytes, taking %.1f s.  The empty board is a %s%n", db.size(), f, f.length(),
+				(System.nanoTime() - start)/1e9, results[db.value(new Board(cols, rows))]);
+		db.close();
+	}
+	/**
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @return - the name main() gives the database for boards of that size, eg. "ConnectFour-5x4.db"
+	 */
+	public static String fileName(int cols, int rows) {
+		return "ConnectFour-" + cols + "x" + rows + ".db";
+	}
+}
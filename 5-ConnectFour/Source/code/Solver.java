@@ -0,0 +1,333 @@
+package code;
+
+/**
+ * A perfect player that finds the exact result of a position, assuming both players make the best possible moves
+ * Scores are from the point of view of the player whose turn it is: positive if they win, negative if they lose and 0 for a draw.
+ * The sooner a win comes, the larger the score, see movesToEnd().
+ * The position is kept as two bitboards, one with the pieces of the player moving and one with every piece, and searched with
+ * null window negamax searches that narrow in on the score.  Moves that let the opponent win right away are never searched.
+ * Positions where ThreatAnalysis proves the player moving can't win are never searched for a win.
+ * Scores are remembered in a transposition table that is kept between calls, so solving a game move after move gets faster.
+ * A search context can be given to stop a search with SearchContext.stop() or its limits, every position solved counting as a node.
+ * A stopped search gives the best move found so far, or the first move that doesn't lose straight away, and its score means nothing.
+ * @author Zach Kemphues
+ */
+public class Solver implements Engine {
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int COL_BITS;
+	private final int CELLS;
+	private final int MIN_SCORE;
+	private final long BOTTOM; //a bit at the bottom of each column
+	private final long BOARD; //every playable cell
+	private final long[] COLUMN; //every cell of each column
+	private final long[] TOP; //the top cell of each column
+	private int[] _order; //the columns from the center out
+
+	private long _current; //the pieces of the player moving
+	private long _mask; //every piece on the board
+	private int _moves; //the number of pieces on the board
+	private long _nodes;
+
+	private long[] _keys; //transposition table of upper bounds, indexed by key modulo its size
+	private byte[] _values;
+	private final int TABLE_SIZE;
+	private long[][] _sortMoves; //move lists for each number of pieces on the board, so searching allocates nothing
+	private int[][] _sortScores;
+	private ThreatAnalysis _threats;
+	private SearchContext _limits; //the context that can stop the search going on, or null
+	private int _lastScore; //the score of the board bestMove() was last called on
+
+	/**
+	 * Creates a solver for the standard board with a 2^23 entry transposition table, taking about 75MB
+	 */
+	public Solver() {
+		this(7, 6, 23);
+	}
+	/**
+	 * Creates a solver for boards of the given size
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param tableBits - the log base 2 of the number of entries in the transposition table, each entry takes 9 bytes
+	 */
+	public Solver(int cols, int rows, int tableBits) {
+		if(cols*(rows+1) > Long.SIZE)
+			throw new IllegalArgumentException("A " + cols + "x" + rows + " board does not fit in a 64 bit bitboard");
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		COL_BITS = rows + 1;
+		CELLS = cols*rows;
+		MIN_SCORE = -CELLS/2 + 3;
+		long bottom = 0;
+		COLUMN = new long[cols];
+		TOP = new long[cols];
+		for(int c = 0; c < cols; c++) {
+			bottom |= 1L << c*COL_BITS;
+			COLUMN[c] = ((1L << rows) - 1) << c*COL_BITS;
+			TOP[c] = 1L << (c*COL_BITS + rows - 1);
+		}
+		BOTTOM = bottom;
+		BOARD = bottom * ((1L << rows) - 1);
+		_order = new int[cols];
+		for(int i = 0; i < cols; i++)
+			_order[i] = cols/2 + ((i%2 == 0) ? i/2 : -(i+1)/2);
+		TABLE_SIZE = (1 << tableBits) + 1;//odd, so keys spread over the table even though they share low bits
+		_keys = new long[TABLE_SIZE];
+		_values = new byte[TABLE_SIZE];
+		_sortMoves = new long[CELLS + 1][cols];
+		_sortScores = new int[CELLS + 1][cols];
+		_threats = new ThreatAnalysis(cols, rows, 4);
+	}
+	/**
+	 * @param b - a board
+	 * @return - true if the solver can solve boards the size of b, which must need four in a row to win
+	 */
+	public boolean fits(Board b) {
+		return b.columnsOnBoard() == NUM_COLS && b.rowsOnBoard() == NUM_ROWS && b.winLength() == 4;
+	}
+	/**
+	 * Finds the exact score of a board for the player whose turn it is
+	 * @param b - a board the game is not over on
+	 * @return - the score of the board
+	 */
+	public int solve(Board b) {
+		load(b);
+		return solve();
+	}
+	/**
+	 * Chooses the move with the best score for the player whose turn it is, trying center columns first between equal moves
+	 */
+	@Override
+	public int bestMove(Board b) {
+		return bestMove(b, null);
+	}
+	/**
+	 * Chooses the move with the best score for the player whose turn it is, trying center columns first between equal moves
+	 * The score of the board is found along the way, see lastScore().
+	 * @param b - a board the game is not over on
+	 * @param limits - a context whose limits and stop() end the search early, or null to always finish
+	 * @return - the best move, or if the search was stopped the best one found so far
+	 */
+	public int bestMove(Board b, SearchContext limits) {
+		load(b);
+		_limits = limits;
+		int best = -1;
+		int bestScore = Integer.MIN_VALUE;
+		for(int i = 0; i < NUM_COLS; i++) {
+			int col = _order[i];
+			if(!canPlay(col))
+				continue;
+			if(isWinningMove(col)) {
+				_lastScore = (CELLS + 1 - _moves)/2;
+				_limits = null;
+				return col;
+			}
+			if(best < 0)
+				best = col;//there is always a move to play, even if the search is stopped straight away
+			if(stopped())
+				break;
+			long current = _current;
+			long mask = _mask;
+			play(col);
+			int score = -solve();
+			_current = current;
+			_mask = mask;
+			_moves--;
+			if(score > bestScore && !stopped()) {
+				bestScore = score;
+				best = col;
+			}
+		}
+		_lastScore = bestScore;
+		_limits = null;
+		return best;
+	}
+	/**
+	 * @return - the score of the board bestMove() was last called on, without solving it again, meaningless if that search was stopped
+	 */
+	public int lastScore() {
+		return _lastScore;
+	}
+	/**
+	 * @param score - a score found by the solver
+	 * @param piecesPlayed - the number of pieces on the board that was solved
+	 * @return - the number of moves until the game is won or lost with perfect play, or until the board is full for a draw
+	 */
+	public int movesToEnd(int score, int piecesPlayed) {
+		if(score == 0)
+			return CELLS - piecesPlayed;
+		int end = CELLS + 2 - 2*Math.abs(score); //the number of pieces on the board once the winning piece is played
+		int winnerFirst = score > 0 ? piecesPlayed + 1 : piecesPlayed + 2; //the first move the winner could win on
+		if((end - winnerFirst)%2 != 0)
+			end--;
+		return end - piecesPlayed;
+	}
+	/**
+	 * @return - the number of positions searched since the solver was created
+	 */
+	public long nodes() {
+		return _nodes;
+	}
+	//sets up the bitboards from a board
+	private void load(Board b) {
+		if(!fits(b))
+			throw new IllegalArgumentException("This solver is for " + NUM_COLS + "x" + NUM_ROWS + " boards");
+		boolean p1Turn = b.lastPiece() != Piece.P1;
+		_current = b.pieces(p1Turn);
+		_mask = b.pieces(true) | b.pieces(false);
+		_moves = b.piecesPlayed();
+	}
+	//finds the exact score of the loaded position by narrowing the possible range with null window searches
+	private int solve() {
+		if(canWinNext())
+			return (CELLS + 1 - _moves)/2;
+		int min = -(CELLS - _moves)/2;
+		int max = (CELLS + 1 - _moves)/2;
+		while(min < max) {
+			int med = min + (max - min)/2;
+			if(med <= 0 && min/2 < med)//try closer to 0 first, most positions are close to even
+				med = min/2;
+			else if(med >= 0 && max/2 > med)
+				med = max/2;
+			int r = negamax(med, med + 1);
+			if(stopped())
+				return 0;
+			if(r <= med)
+				max = r;
+			else
+				min = r;
+		}
+		return min;
+	}
+	//returns the score of the position if it is between alpha and beta, otherwise a bound on the side it is outside of
+	//the player moving must not be able to win on this move
+	private int negamax(int alpha, int beta) {
+		_nodes++;
+		if(_limits != null && _limits.countNode())
+			return 0;//stopped, the result will be thrown away
+		long next = nonLosingMoves();
+		if(next == 0)//every move lets the opponent win
+			return -(CELLS - _moves)/2;
+		if(_moves >= CELLS - 2)//neither player can win with the last two pieces
+			return 0;
+		int min = -(CELLS - 2 - _moves)/2;//the opponent cannot win on their next move
+		if(alpha < min) {
+			alpha = min;
+			if(alpha >= beta)
+				return alpha;
+		}
+		int max = (CELLS - 1 - _moves)/2;//we cannot win on this move
+		long key = key();
+		int slot = (int)Long.remainderUnsigned(key, TABLE_SIZE);
+		if(_keys[slot] == key)
+			max = _values[slot] + MIN_SCORE - 1;
+		if(beta > max) {
+			beta = max;
+			if(alpha >= beta)
+				return beta;
+		}
+		if(beta > 0 && _threats.analyze(_current, _mask) != ThreatAnalysis.UNDECIDED) {//the opponent can hold us to a draw
+			beta = 0;
+			if(alpha >= beta)
+				return beta;
+		}
+
+		//order the moves by how many ways to win they leave us with, then from the center out
+		long[] moves = _sortMoves[_moves];
+		int[] scores = _sortScores[_moves];
+		int count = 0;
+		for(int i = NUM_COLS - 1; i >= 0; i--) {
+			long move = next & COLUMN[_order[i]];
+			if(move == 0)
+				continue;
+			int score = Long.bitCount(winningCells(_current | move, _mask | move));
+			int j = count++;
+			while(j > 0 && scores[j-1] > score) {
+				moves[j] = moves[j-1];
+				scores[j] = scores[j-1];
+				j--;
+			}
+			moves[j] = move;
+			scores[j] = score;
+		}
+
+		long current = _current;
+		long mask = _mask;
+		for(int i = count - 1; i >= 0; i--) {
+			_current = current ^ mask;
+			_mask = mask | moves[i];
+			_moves++;
+			int score = -negamax(-beta, -alpha);
+			_current = current;
+			_mask = mask;
+			_moves--;
+			if(stopped())
+				return 0;//without storing a score that wasn't finished
+			if(score >= beta)
+				return score;
+			if(score > alpha)
+				alpha = score;
+		}
+		_keys[slot] = key;
+		_values[slot] = (byte)(alpha - MIN_SCORE + 1);
+		return alpha;
+	}
+	//returns true if the context given to bestMove() has stopped the search
+	private boolean stopped() {
+		return _limits != null && _limits.stopped();
+	}
+	//returns a key that is unique to the position
+	private long key() {
+		return _current | (_mask + BOTTOM);
+	}
+	//returns true if the column is not full
+	private boolean canPlay(int col) {
+		return (_mask & TOP[col]) == 0;
+	}
+	//plays in a column for the player moving, which then becomes the other player's turn
+	private void play(int col) {
+		_current ^= _mask;
+		_mask |= _mask + (1L << col*COL_BITS);
+		_moves++;
+	}
+	//returns true if playing in the column wins for the player moving
+	private boolean isWinningMove(int col) {
+		return (winningCells(_current, _mask) & possible() & COLUMN[col]) != 0;
+	}
+	//returns true if the player moving can win right now
+	private boolean canWinNext() {
+		return (winningCells(_current, _mask) & possible()) != 0;
+	}
+	//returns the cells the player moving can play in this turn
+	private long possible() {
+		return (_mask + BOTTOM) & BOARD;
+	}
+	//returns the moves that do not let the opponent win right away, or 0 if every move does
+	//the player moving must not be able to win on this move
+	private long nonLosingMoves() {
+		long possible = possible();
+		long opponentWins = winningCells(_current ^ _mask, _mask);
+		long forced = possible & opponentWins;
+		if(forced != 0) {
+			if((forced & (forced - 1)) != 0)//the opponent has two wins, we can only block one
+				return 0;
+			possible = forced;
+		}
+		return possible & ~(opponentWins >> 1);//don't play right below a cell the opponent wins in
+	}
+	//returns the empty cells that would complete four in a line for the player with the given pieces
+	private long winningCells(long pieces, long mask) {
+		//vertical
+		long r = (pieces << 1) & (pieces << 2) & (pieces << 3);
+		//horizontal and both diagonals
+		for(int shift = COL_BITS - 1; shift <= COL_BITS + 1; shift++) {
+			long p = (pieces << shift) & (pieces << 2*shift);
+			r |= p & (pieces << 3*shift);
+			r |= p & (pieces >>> shift);
+			p = (pieces >>> shift) & (pieces >>> 2*shift);
+			r |= p & (pieces << shift);
+			r |= p & (pieces >>> 3*shift);
+		}
+		return r & (BOARD ^ mask);
+	}
+}
@@ -1,8 +1,26 @@
 package code;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
 import junit.framework.Assert;
 import org.junit.Test;
 
+import server.GameServer;
+import server.LoadGenerator;
+
 /**
  * Some JUnit tests that were used in the debugging process.
  * @author Zach Kemphues
@@ -31,7 +49,7 @@ public class Tester {
 	 */
 	@Test public void testPlaceOne() {
 		Board b = new Board();
-		b.place(new Player1(), 1);
+		b.place(Piece.P1, 1);
 		String expected = 	"__ __ __ __ __ __ __ \n" +
 							"__ __ __ __ __ __ __ \n" +
 							"__ __ __ __ __ __ __ \n" +
@@ -48,8 +66,8 @@ public class Tester {
 	 */
 	@Test public void testPlaceTwoAtSameLoc() {
 		Board b = new Board();
-		b.place(new Player1(), 1);
-		b.place(new Player2(), 1);
+		b.place(Piece.P1, 1);
+		b.place(Piece.P2, 1);
 		String expected = 	"__ __ __ __ __ __ __ \n" +
 							"__ __ __ __ __ __ __ \n" +
 							"__ __ __ __ __ __ __ \n" +
@@ -66,13 +84,13 @@ public class Tester {
 	 */
 	@Test public void testPlaceInFullCol() {
 		Board b = new Board();
-		b.place(new Player1(), 1);
-		b.place(new Player2(), 1);
-		b.place(new Player1(), 1);
-		b.place(new Player2(), 1);
-		b.place(new Player1(), 1);
-		b.place(new Player2(), 1);
-		b.place(new Player1(), 1);//last one should not be placed
+		b.place(Piece.P1, 1);
+		b.place(Piece.P2, 1);
+		b.place(Piece.P1, 1);
+		b.place(Piece.P2, 1);
+		b.place(Piece.P1, 1);
+		b.place(Piece.P2, 1);
+		b.place(Piece.P1, 1);//last one should not be placed
 		String expected = 	"__ P2 __ __ __ __ __ \n" +
 							"__ P1 __ __ __ __ __ \n" +
 							"__ P2 __ __ __ __ __ \n" +
@@ -89,17 +107,978 @@ public class Tester {
 	@Test public void undoOnce() {
 		Board b1 = new Board();
 		Board b2 = new Board();
-		b1.place(new Player1(), 1);
-		b1.place(new Player2(), 1);
-		b1.place(new Player1(), 1);
+		b1.place(Piece.P1, 1);
+		b1.place(Piece.P2, 1);
+		b1.place(Piece.P1, 1);
 		b1.undo();
 		
-		b2.place(new Player1(), 1);
-		b2.place(new Player2(), 1);
+		b2.place(Piece.P1, 1);
+		b2.place(Piece.P2, 1);
 		
 		String expected = b2.boardAsString();
 		String actual = b1.boardAsString();
 		String feedback = "The board should have been:\n"+expected+"\nThe board looked like this instead:\n"+actual;
 		Assert.assertTrue(feedback, expected.equals(actual));
 	}
+	/**
+	 * Tests that four in a line is detected in every direction, and that lines do not wrap between columns
+	 */
+	@Test public void testWinDetection() {
+		int[][] games = {
+				{0,0,1,1,2,2,3},				//horizontal
+				{0,1,0,1,0,1,0},				//vertical
+				{0,1,1,2,2,3,2,3,3,6,3},		//diagonal going up to the right
+				{3,2,2,1,1,0,1,0,0,6,0},		//diagonal going up to the left
+		};
+		for(int[] game : games) {
+			Board b = new Board();
+			Piece p = Piece.P1;
+			for(int col : game) {
+				Assert.assertTrue("The game was won before the last move:\n"+b.boardAsString(), !b.gameWon());
+				b.place(p, col);
+				p = p.next();
+			}
+			Assert.assertTrue("The game should have been won:\n"+b.boardAsString(), b.gameWon());
+			Assert.assertTrue("Player1 should have won:\n"+b.boardAsString(), b.evaluate() == GTN.P1_WIN);
+			b.undo();
+			Assert.assertTrue("Undoing the winning move should un-win the game:\n"+b.boardAsString(), !b.gameWon());
+		}
+		
+		//three at the top of column 0 and one at the bottom of column 1 would be a line if the columns wrapped
+		Board b = new Board();
+		for(int i = 0; i < 3; i++)
+			b.place(Piece.P2, 0);
+		for(int i = 0; i < 3; i++)
+			b.place(Piece.P1, 0);
+		b.place(Piece.P1, 1);
+		Assert.assertTrue("Lines should not wrap between columns:\n"+b.boardAsString(), !b.gameWon());
+	}
+	
+	/**
+	 * Tests that the pruned game tree finds the same move and value as a plain minimax search of the same depth
+	 */
+	@Test public void testPrunedSearchMatchesMinimax() {
+		Random rand = new Random(2012);
+		for(int game = 0; game < 40; game++) {
+			Board b = randomBoard(rand, 1 + 2*rand.nextInt(10));
+			int[] expectedMove = new int[1];
+			int expectedValue = minimax(b, 5, expectedMove);
+			String before = b.boardAsString();
+			GTN tree = new GTN(b, 0, 5);
+			String feedback = "Searching this board gave move "+tree.getBestMove()+" worth "+tree.evaluate()+
+					" instead of move "+expectedMove[0]+" worth "+expectedValue+":\n"+before;
+			Assert.assertTrue(feedback, tree.getBestMove() == expectedMove[0] && tree.evaluate() == expectedValue);
+			Assert.assertTrue("The search should leave the board the way it found it", before.equals(b.boardAsString()));
+		}
+	}
+	
+	/**
+	 * Tests that the transposition table does not change the result of the search under either replacement policy,
+	 * even when it is so small that positions constantly collide
+	 */
+	@Test public void testTranspositionTable() {
+		Random rand = new Random(1989);
+		int[] policies = {TranspositionTable.DEPTH_PREFERRED, TranspositionTable.ALWAYS_REPLACE};
+		long hits = 0;
+		for(int game = 0; game < 20; game++) {
+			Board b = randomBoard(rand, 1 + 2*rand.nextInt(10));
+			int[] expectedMove = new int[1];
+			int expectedValue = minimax(b, 5, expectedMove);
+			for(int policy : policies) {
+				for(int bits = 4; bits <= 16; bits += 12) {
+					TranspositionTable table = new TranspositionTable(bits, policy);
+					GTN tree = new GTN(b, 0, 5, new SearchContext(b.columnsOnBoard(), table));
+					String feedback = "Searching with policy "+policy+" and 2^"+bits+" entries gave move "+tree.getBestMove()+" worth "+
+							tree.evaluate()+" instead of move "+expectedMove[0]+" worth "+expectedValue+":\n"+b.boardAsString();
+					Assert.assertTrue(feedback, tree.getBestMove() == expectedMove[0] && tree.evaluate() == expectedValue);
+					hits += table.hits();
+				}
+			}
+		}
+		Assert.assertTrue("The table should have been used", hits > 0);
+		
+		//keys 2 and 4 share the slot in a two entry table
+		TranspositionTable table = new TranspositionTable(1, TranspositionTable.DEPTH_PREFERRED);
+		table.store(2, 9, 5, 3, TranspositionTable.EXACT);
+		table.store(4, 1, 6, 3, TranspositionTable.EXACT);
+		Assert.assertTrue("A shallower entry should not replace a deeper one from the same move", table.probe(2) != 0 && table.probe(4) == 0);
+		table.newSearch();
+		Assert.assertTrue("An entry from an earlier move should still be found", TranspositionTable.score(table.probe(2)) == 5);
+		table.store(4, 1, 6, 3, TranspositionTable.EXACT);
+		Assert.assertTrue("Any entry should replace one from an earlier move", table.probe(2) == 0 && TranspositionTable.score(table.probe(4)) == 6);
+	}
+	
+	/**
+	 * Tests that a board and its mirror image have each other's hashes, and that undo restores the hash
+	 */
+	@Test public void testMirrorHash() {
+		Board b = new Board();
+		Board mirror = new Board();
+		int[] moves = {0,1,1,3,6,2,4,4};
+		Piece p = Piece.P1;
+		for(int col : moves) {
+			b.place(p, col);
+			mirror.place(p, b.columnsOnBoard() - 1 - col);
+			p = p.next();
+		}
+		Assert.assertTrue("A mirrored board should have the mirror hash", b.hash() == mirror.mirrorHash() && b.mirrorHash() == mirror.hash());
+		long hash = b.hash();
+		b.place(p, 5);
+		b.undo();
+		Assert.assertTrue("Undo should restore the hash", hash == b.hash());
+		for(int i = 0; i < moves.length; i++)
+			b.undo();
+		Assert.assertTrue("An empty board should have both hashes be 0", b.hash() == 0 && b.mirrorHash() == 0);
+	}
+	
+	/**
+	 * Tests that iterative deepening without limits ends up with the same move as a minimax search to its maximum depth,
+	 * and that running out of nodes still gives a playable move
+	 */
+	@Test public void testIterativeDeepening() {
+		Random rand = new Random(7);
+		for(int game = 0; game < 20; game++) {
+			Board b = randomBoard(rand, 1 + 2*rand.nextInt(10));
+			int[] expectedMove = new int[1];
+			int expectedValue = minimax(b, 5, expectedMove);
+			IterativeDeepening ai = new IterativeDeepening(b.columnsOnBoard(), 0, 0, 5);
+			int move = ai.bestMove(b);
+			boolean decided = expectedValue == GTN.P1_WIN || expectedValue == GTN.P2_WIN;
+			String feedback = "Iterative deepening gave move "+move+" worth "+ai.value()+" instead of move "+expectedMove[0]+
+					" worth "+expectedValue+":\n"+b.boardAsString();
+			if(new SearchContext(b.columnsOnBoard()).forcedMove(b) >= 0)//forced moves are only searched two plies deep
+				Assert.assertTrue(feedback, ai.depthReached() == 2 && (decided || move == expectedMove[0]));
+			else
+				Assert.assertTrue(feedback, ai.value() == expectedValue && (decided || move == expectedMove[0]));
+			
+			ai = new IterativeDeepening(b.columnsOnBoard(), 0, 2000, 0);
+			move = ai.bestMove(b);
+			Assert.assertTrue("Running out of nodes should still give a playable move", move >= 0 && !b.isFull(move));
+		}
+		
+		final int[] depths = new int[2];//the last depth reported, and the depth to cancel the search at
+		final IterativeDeepening ai = new IterativeDeepening(7, 0, 0, 6);
+		ai.setListener(new SearchListener() {
+			@Override
+			public void searched(int depth, int move, int value) {
+				Assert.assertTrue("Depths should be reported in order", depth == depths[0] + 1);
+				depths[0] = depth;
+				if(depth == depths[1])
+					ai.cancel();
+			}
+		});
+		ai.bestMove(new Board());
+		Assert.assertTrue("Every depth should have been reported, not "+depths[0], depths[0] == 6);
+		depths[0] = 0;
+		depths[1] = 3;
+		int move = ai.bestMove(new Board());
+		Assert.assertTrue("A cancelled search should still give a playable move from the depth it reached", move >= 0 && depths[0] == 3 && ai.depthReached() == 3);
+		ai.cancel();//too late for any search, so it mustn't cut the next one short
+		depths[0] = 0;
+		depths[1] = 0;
+		ai.bestMove(new Board());
+		Assert.assertTrue("The search after a cancelled one should go to full depth, not "+ai.depthReached(), depths[0] == 6 && ai.depthReached() == 6);
+	}
+	
+	/**
+	 * Tests that pondering answers predicted replies without searching, with the move a search would have found
+	 */
+	@Test public void testPonderer() throws InterruptedException {
+		Random rand = new Random(12);
+		for(int game = 0; game < 5; game++) {
+			IterativeDeepening engine = new IterativeDeepening(7, 0, 0, 5);
+			Ponderer ai = new Ponderer(engine);
+			Board b = randomBoard(rand, 2*rand.nextInt(6));
+			b.place(b.lastPiece().next(), ai.bestMove(b));
+			if(b.gameWon() || engine.shortcut()) {//a forced move doesn't show how deep the player searches, that's tested below
+				ai.shutdown();
+				continue;
+			}
+			while(ai.pondering())
+				Thread.sleep(10);
+			b.place(b.lastPiece().next(), rand.nextInt(7));
+			if(b.gameWon() || b.fullBoard())
+				continue;
+			int[] expectedMove = new int[1];
+			int expectedValue = minimax(b, 5, expectedMove);
+			boolean decided = expectedValue == GTN.P1_WIN || expectedValue == GTN.P2_WIN;
+			Assert.assertTrue("The reply should have been pondered to depth 5:\n"+b.boardAsString(), decided || ai.ponderedDepth(b) == 5);
+			int move = ai.bestMove(b);
+			Assert.assertTrue("The pondered reply should have been answered without searching", ai.instantMoves() == 1);
+			Assert.assertTrue("Pondering gave move "+move+" instead of "+expectedMove[0]+":\n"+b.boardAsString(), decided || move == expectedMove[0]);
+			ai.shutdown();
+		}
+		
+		//blocking a forced move only searches two plies, which mustn't make a reply pondered to five plies good enough to play
+		Ponderer ai = new Ponderer(new IterativeDeepening(7, 0, 0, 5));
+		Board b = new Board();
+		int[] cols = {0, 6, 1, 6, 2};
+		for(int col : cols)
+			b.place(b.lastPiece().next(), col);
+		int block = ai.bestMove(b);
+		Assert.assertTrue("Player2 has to block at 3, not "+block, block == 3);
+		b.place(Piece.P2, block);
+		while(ai.pondering())
+			Thread.sleep(10);
+		b.place(Piece.P1, 3);
+		int[] expectedMove = new int[1];
+		int expectedValue = minimax(b, 5, expectedMove);
+		Assert.assertTrue("The test needs a reply that isn't decided", expectedValue != GTN.P1_WIN && expectedValue != GTN.P2_WIN);
+		ai.bestMove(b);
+		Assert.assertTrue("A reply after a forced move should be searched, not played from pondering", ai.instantMoves() == 0);
+		ai.shutdown();
+	}
+	
+	/**
+	 * Tests that a small tournament plays every game and writes a line for each one
+	 */
+	@Test public void testTournament() throws IOException {
+		Tournament t = new Tournament("depth=4", "depth=1", 7, 6, 2);
+		StringWriter csv = new StringWriter();
+		t.play(8, 4, csv);
+		Assert.assertTrue("Every game should have been counted", t.games() == 8 && t.wins() + t.draws() + t.losses() == 8);
+		Assert.assertTrue("There should be a header and a line for each game:\n"+csv, csv.toString().split("\n").length == 9);
+		double[] interval = t.confidence();
+		Assert.assertTrue("The score "+t.score()+" should be inside its confidence interval", interval[0] <= t.score() && t.score() <= interval[1]);
+		Assert.assertTrue("Searching 4 plies should beat searching 1, not score "+t.score(), t.score() > 0.5);
+		Assert.assertTrue("Both players should have searched", t.nodesPerSecond(0) > 0 && t.nodesPerSecond(1) > 0);
+	}
+	
+	/**
+	 * Tests that the analyzer writes a line for every position in the order they were read, with the same move a single search finds
+	 */
+	@Test public void testAnalyzer() throws IOException {
+		Random rand = new Random(17);
+		String input = "";
+		Board[] boards = new Board[20];
+		for(int i = 0; i < boards.length; i++) {
+			boards[i] = new Board();
+			String moves = "";
+			while(moves.length() < 6) {
+				int col = rand.nextInt(7);
+				if(boards[i].place(boards[i].lastPiece().next(), col)) {
+					if(boards[i].gameWon()) {
+						boards[i].undo();
+						continue;
+					}
+					moves += col;
+				}
+			}
+			input += moves + "\n";
+		}
+		input += "3 3 9\n";
+		StringWriter out = new StringWriter();
+		Analyzer a = new Analyzer(7, 6, 4, 5, 0, 4);
+		Assert.assertTrue("Every line should have been read", a.analyze(new StringReader(input), out) == 21);
+		String[] in = input.split("\n");
+		String[] lines = out.toString().split("\n");
+		Assert.assertTrue("There should be a line for each position:\n"+out, lines.length == 21);
+		for(int i = 0; i < boards.length; i++) {
+			String[] fields = lines[i].split("\t");
+			Assert.assertTrue("The lines should be in input order:\n"+out, fields[0].equals(in[i]));
+			int move = new IterativeDeepening(7, 0, 0, 5).bestMove(boards[i]);
+			Assert.assertTrue("Line "+i+" should play "+move+": "+lines[i], Integer.parseInt(fields[1]) == move);
+			Assert.assertTrue("Line "+i+" should be searched 5 plies unless it is won: "+lines[i], fields[3].equals("5") || fields[2].endsWith("_WIN"));
+			Assert.assertTrue("The principal variation should start with the best move: "+lines[i], fields[4].startsWith(fields[1]));
+		}
+		Assert.assertTrue("A move off the board should be reported, not analyzed: "+lines[20], lines[20].startsWith("3 3 9\terror"));
+		
+		Thread.currentThread().interrupt();
+		boolean stopped = false;
+		try {
+			a.analyze(new StringReader(input), new StringWriter());
+		} catch(InterruptedIOException e) {
+			stopped = true;
+		}
+		Assert.assertTrue("An interrupted analysis should say it stopped early and keep the interrupt", stopped && Thread.interrupted());
+	}
+	
+	/**
+	 * Tests that the game server answers the protocol, and keeps answering every session of a load generator without errors
+	 */
+	@Test public void testGameServer() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0, 2, 20, 4);
+		try {
+			Socket s = new Socket("localhost", server.port());
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+			PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+			out.println("NEW");
+			Assert.assertTrue("A new game should be on the standard board", in.readLine().equals("OK 7 6 4"));
+			out.println("MOVE 9");
+			Assert.assertTrue("A move off the board should be an error", in.readLine().startsWith("ERR"));
+			out.println("MOVE 3");
+			String reply = in.readLine();
+			Assert.assertTrue("The computer should reply with a move, not "+reply, reply.matches("MOVE [0-6]"));
+			out.println("QUIT");
+			s.close();
+			
+			LoadGenerator load = new LoadGenerator("localhost", server.port(), 8);
+			load.run(500);
+			Assert.assertTrue("Every session should have played without errors:\n"+load.summary(), load.moves() > 0 && load.errors() == 0);
+			Assert.assertTrue("The server should have counted the moves: "+server.stats(), server.moves() >= load.moves());
+		} finally {
+			server.close();
+		}
+	}
+	
+	/**
+	 * Tests that the search counts what it does, and that the latency histogram puts times in the right buckets
+	 */
+	@Test public void testSearchStats() {
+		Board b = randomBoard(new Random(4), 6);
+		GTN tree = new GTN(b, 0, 6);
+		SearchStats stats = tree.stats();
+		Assert.assertTrue("The search should have visited nodes and leaves: "+stats, stats.nodes() > 0 && stats.leaves() > 0 && stats.leaves() <= stats.nodes());
+		Assert.assertTrue("Alpha-beta should have cut something off: "+stats, stats.cutoffs() > 0);
+		Assert.assertTrue("The leaves should be at most 6 plies down: "+stats, stats.maxPly() > 0 && stats.maxPly() <= 6 && stats.depth() == 6);
+		
+		IterativeDeepening ai = new IterativeDeepening(7, 0, 0, 6);
+		ai.bestMove(b);
+		SearchStats all = ai.stats();
+		Assert.assertTrue("Every depth should have been timed: "+all, all.iterations() == 6 && all.depth() == 6 && all.tableHits() > 0);
+		
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(500000);//0.5 ms
+		h.record(3000000);//3 ms
+		h.record(3000000);
+		h.record(100000000);//100 ms
+		Assert.assertTrue("The times should be in the <1, 2-4 and 64-128 ms buckets:\n"+h, h.bucketCount(0) == 1 && h.bucketCount(2) == 2 && h.bucketCount(7) == 1);
+		Assert.assertTrue("Half the times should be under 4 ms:\n"+h, h.percentileMillis(0.5) == 4 && h.percentileMillis(1) == 128);
+	}
+	
+	/**
+	 * Tests that searching allocates the same few objects however many nodes it visits, once its context is set up
+	 */
+	@Test public void testSearchAllocation() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		Random rand = new Random(25);
+		SearchContext context = new SearchContext(7);
+		new GTN(randomBoard(rand, 8), 0, 7, context);
+		for(int i = 0; i < 5; i++) {
+			Board b = randomBoard(rand, 8);
+			long nodes = context.totalNodes();
+			long bytes = threads.getThreadAllocatedBytes(thread);
+			new GTN(b, 0, 7, context);
+			bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+			nodes = context.totalNodes() - nodes;
+			Assert.assertTrue("Searching "+nodes+" nodes allocated "+bytes+" bytes", nodes > 1000 && bytes < 1024);
+		}
+	}
+	
+	/**
+	 * Tests that the line counts kept up to date piece by piece match counting every line from scratch,
+	 * both for pieces taken out of any cell and for boards played and undone
+	 */
+	@Test public void testLineCounts() {
+		Random rand = new Random(10);
+		int[][] sizes = {{7,6,4}, {8,7,5}, {5,5,3}, {12,9,4}, {4,4,4}};
+		for(int[] size : sizes) {
+			LineHandler lines = new LineHandler(size[0], size[1], size[2]);
+			Piece[][] grid = new Piece[size[0]][size[1]];
+			for(int step = 0; step < 2000; step++) {
+				int col = rand.nextInt(size[0]);
+				int row = rand.nextInt(size[1]);
+				if(grid[col][row] == null) {
+					grid[col][row] = rand.nextBoolean() ? Piece.P1 : Piece.P2;
+					lines.place(grid[col][row], col, row);
+				}
+				else {
+					lines.remove(grid[col][row], col, row);
+					grid[col][row] = null;
+				}
+				int[] expected = countLines(grid, size[2]);
+				Assert.assertTrue("A "+size[0]+"x"+size[1]+" board with "+size[2]+" to win counted "+lines.oppsP1()+" "+lines.oppsP2()+" "+
+						lines.valueP1()+" "+lines.valueP2()+" instead of "+Arrays.toString(expected),
+						lines.oppsP1() == expected[0] && lines.oppsP2() == expected[1] && lines.valueP1() == expected[2] && lines.valueP2() == expected[3]);
+			}
+			for(int game = 0; game < 20; game++) {
+				Board b = new Board(size[0], size[1], size[2]);
+				for(int step = 0; step < 200 && !b.fullBoard(); step++) {
+					if(b.piecesPlayed() > 0 && rand.nextInt(4) == 0)
+						b.undo();
+					else if(!b.place(b.lastPiece().next(), rand.nextInt(size[0])))
+						continue;
+					if(b.gameWon()) {
+						b.undo();
+						continue;
+					}
+					for(int c = 0; c < size[0]; c++)
+						for(int r = 0; r < size[1]; r++)
+							grid[c][r] = b.pieceAt(c, r) == Piece.EMPTY ? null : b.pieceAt(c, r);
+					int[] expected = countLines(grid, size[2]);
+					int eval = (expected[0] - expected[1])*10000 + expected[2] - expected[3];
+					Assert.assertTrue("Evaluated "+b.evaluate()+" instead of "+eval+":\n"+b.boardAsString(), b.evaluate() == eval);
+				}
+			}
+		}
+	}
+	//returns the lines each player can still win with, then the pieces each player has in those lines, Player1 first
+	private static int[] countLines(Piece[][] grid, int length) {
+		int[][] directions = {{1,0}, {0,1}, {1,1}, {-1,1}};
+		int[] counts = new int[4];
+		for(int c = 0; c < grid.length; c++) {
+			for(int r = 0; r < grid[0].length; r++) {
+				for(int[] d : directions) {
+					int endCol = c + (length - 1)*d[0];
+					int endRow = r + (length - 1)*d[1];
+					if(endCol < 0 || endCol >= grid.length || endRow >= grid[0].length)
+						continue;
+					int p1 = 0;
+					int p2 = 0;
+					for(int i = 0; i < length; i++) {
+						Piece p = grid[c + i*d[0]][r + i*d[1]];
+						if(p == Piece.P1)
+							p1++;
+						else if(p == Piece.P2)
+							p2++;
+					}
+					if(p2 == 0) {
+						counts[0]++;
+						counts[2] += p1;
+					}
+					if(p1 == 0) {
+						counts[1]++;
+						counts[3] += p2;
+					}
+				}
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Tests win detection on boards of many sizes and win lengths, including ones too big for a single long
+	 */
+	@Test public void testConnectN() {
+		Random rand = new Random(16);
+		//tall, narrow and long win boards have lines whose shifts would run past the end of a long
+		int[][] sizes = {{7,6,4}, {7,6,3}, {8,7,5}, {20,20,5}, {12,9,4}, {30,25,6}, {4,14,8}, {2,31,4}, {8,7,16}, {3,20,10}, {1,40,4}};
+		for(int[] size : sizes) {
+			for(int game = 0; game < 20; game++) {
+				Board b = new Board(size[0], size[1], size[2]);
+				while(!b.gameWon() && !b.fullBoard()) {
+					int col = rand.nextInt(size[0]);
+					Piece p = b.lastPiece().next();
+					long hash = b.hash();
+					int eval = b.evaluate();
+					if(!b.place(p, col))
+						continue;
+					boolean expected = naiveWin(b, size[2]);
+					Assert.assertTrue("A "+size[0]+"x"+size[1]+" board with "+size[2]+" to win said won="+b.gameWon()+":\n"+b.boardAsString(), b.gameWon() == expected);
+					b.undo();
+					Assert.assertTrue("Undoing should put the board back:\n"+b.boardAsString(), !b.gameWon() && b.hash() == hash && b.evaluate() == eval);
+					b.place(p, col);
+				}
+			}
+		}
+		Board big = new Board(20, 20, 5);
+		Assert.assertTrue("A 20x20 board does not fit in a long", !big.compact() && new Board().compact());
+		for(int col = 8; col < 12; col++) {
+			big.place(Piece.P1, col);
+			big.place(Piece.P2, col);
+		}
+		Assert.assertTrue("Four in a row should not win when five are needed", !big.gameWon());
+		big.place(Piece.P1, 12);
+		Assert.assertTrue("Five in a row should win", big.gameWon() && big.evaluate() == GTN.P1_WIN);
+	}
+	//checks every line on the board for the given number of pieces in a row from the same player
+	private static boolean naiveWin(Board b, int length) {
+		int[][] directions = {{1,0}, {0,1}, {1,1}, {1,-1}};
+		for(int c = 0; c < b.columnsOnBoard(); c++) {
+			for(int r = 0; r < b.rowsOnBoard(); r++) {
+				Piece p = b.pieceAt(c, r);
+				if(p != Piece.P1 && p != Piece.P2)
+					continue;
+				for(int[] d : directions) {
+					int n = 1;
+					while(n < length && b.pieceAt(c + n*d[0], r + n*d[1]) == p)
+						n++;
+					if(n == length)
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Tests that the threats found with bitboards are the cells that would complete a line,
+	 * and that a forced move is found exactly when every other move loses on the next move
+	 */
+	@Test public void testThreats() {
+		Random rand = new Random(19);
+		int[][] sizes = {{7,6,4}, {7,6,3}, {8,7,5}, {9,6,4}, {5,4,2}};
+		for(int[] size : sizes) {
+			for(int game = 0; game < 20; game++) {
+				Board b = new Board(size[0], size[1], size[2]);
+				while(!b.gameWon() && !b.fullBoard()) {
+					for(int player = 0; player < 2; player++) {
+						Piece p = player == 0 ? Piece.P1 : Piece.P2;
+						long expected = 0;
+						for(int c = 0; c < size[0]; c++)
+							for(int r = 0; r < size[1]; r++)
+								if(b.pieceAt(c, r) == Piece.EMPTY && naiveThreat(b, c, r, p, size[2]))
+									expected |= 1L << c*(size[1] + 1) + r;
+						Assert.assertTrue("A "+size[0]+"x"+size[1]+" board with "+size[2]+" to win gave the wrong threats for "+p+":\n"+b.boardAsString(),
+								b.winningCells(player == 0) == expected);
+					}
+					Piece next = b.lastPiece().next();
+					int safe = 0; //moves that don't let the opponent win next
+					int safeCol = -1;
+					int win = -1;
+					int threats = 0; //columns the opponent could win in if it were their turn
+					int block = -1;
+					for(int col = 0; col < size[0]; col++) {
+						if(b.place(next.next(), col)) {
+							if(b.gameWon()) {
+								threats++;
+								block = col;
+							}
+							b.undo();
+						}
+						if(!b.place(next, col))
+							continue;
+						if(b.gameWon())
+							win = col;
+						else if(!canWin(b, next.next())) {
+							safe++;
+							safeCol = col;
+						}
+						b.undo();
+					}
+					//with one threat blocking it is forced even if the opponent wins anyway, playing anywhere else loses straight away
+					int expected = safe == 1 ? safeCol : threats == 1 ? block : -1;
+					int forced = new SearchContext(size[0]).forcedMove(b);
+					String feedback = "The forced move was "+forced+" instead of "+(win >= 0 ? win : expected)+":\n"+b.boardAsString();
+					if(win >= 0) {
+						Assert.assertTrue(feedback, forced >= 0 && b.place(next, forced) && b.gameWon());
+						b.undo();
+					}
+					else
+						Assert.assertTrue(feedback, forced == expected);
+					b.place(next, rand.nextInt(size[0]));
+				}
+			}
+		}
+	}
+	//checks whether a piece of the player at the empty cell c,r would complete a line of the given length
+	private static boolean naiveThreat(Board b, int c, int r, Piece p, int length) {
+		int[][] directions = {{1,0}, {0,1}, {1,1}, {1,-1}};
+		for(int[] d : directions) {
+			int n = 1;
+			for(int i = 1; b.pieceAt(c + i*d[0], r + i*d[1]) == p; i++)
+				n++;
+			for(int i = 1; b.pieceAt(c - i*d[0], r - i*d[1]) == p; i++)
+				n++;
+			if(n >= length)
+				return true;
+		}
+		return false;
+	}
+	//returns true if the player can win with their next piece
+	private static boolean canWin(Board b, Piece p) {
+		for(int col = 0; col < b.columnsOnBoard(); col++) {
+			if(b.place(p, col)) {
+				boolean won = b.gameWon();
+				b.undo();
+				if(won)
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Tests that every position the threat analysis decides on small boards really ends the way it says, by searching to the end of the game
+	 */
+	@Test public void testThreatAnalysis() {
+		Random rand = new Random(24);
+		int[][] sizes = {{4,4,3}, {5,4,3}, {5,4,4}, {4,5,3}};
+		int decided = 0;
+		for(int[] size : sizes) {
+			ThreatAnalysis threats = new ThreatAnalysis(size[0], size[1], size[2]);
+			HashMap<Long, Integer> results = new HashMap<Long, Integer>();
+			for(int game = 0; game < 40; game++) {
+				Board b = new Board(size[0], size[1], size[2]);
+				while(!b.gameWon() && !b.fullBoard()) {
+					if(b.piecesPlayed() >= 4) {
+						int verdict = threats.analyze(b);
+						int result = naiveResult(b, results);
+						String feedback = "The analysis gave "+verdict+" but the player moving gets "+result+":\n"+b.boardAsString();
+						if(verdict == ThreatAnalysis.NO_WIN)
+							Assert.assertTrue(feedback, result <= 0);
+						else if(verdict == ThreatAnalysis.LOSS)
+							Assert.assertTrue(feedback, result < 0);
+						if(verdict != ThreatAnalysis.UNDECIDED)
+							decided++;
+					}
+					b.place(b.lastPiece().next(), rand.nextInt(size[0]));
+				}
+			}
+		}
+		Assert.assertTrue("The analysis never decided a position", decided > 0);
+		//on two columns nobody can get four in a row, which lines shifted past the end of a long used to hide
+		Assert.assertTrue("Nobody can win on an empty 2x31 board", new ThreatAnalysis(2, 31, 4).analyze(new Board(2, 31, 4)) == ThreatAnalysis.NO_WIN);
+	}
+	//returns 1 if the player moving wins with perfect play, -1 if they lose and 0 for a draw
+	private static int naiveResult(Board b, HashMap<Long, Integer> results) {
+		Integer known = results.get(b.positionKey());
+		if(known != null)
+			return known;
+		Piece next = b.lastPiece().next();
+		int best = b.fullBoard() ? 0 : -1;
+		for(int col = 0; col < b.columnsOnBoard() && best < 1; col++) {
+			if(!b.place(next, col))
+				continue;
+			int result = b.gameWon() ? 1 : -naiveResult(b, results);
+			b.undo();
+			best = Math.max(best, result);
+		}
+		results.put(b.positionKey(), best);
+		return best;
+	}
+	
+	/**
+	 * Tests that a copied board looks and behaves like the original without affecting it
+	 */
+	@Test public void testCopy() {
+		Board b = randomBoard(new Random(3), 15);
+		Board copy = b.copy();
+		String expected = b.boardAsString();
+		Assert.assertTrue("The copy should have been:\n"+expected+"\nThe copy looked like this instead:\n"+copy.boardAsString(),
+				expected.equals(copy.boardAsString()) && b.hash() == copy.hash() && b.evaluate() == copy.evaluate());
+		copy.place(copy.lastPiece().next(), 3);
+		copy.undo();
+		copy.undo();
+		Assert.assertTrue("Changing the copy should not change the original", expected.equals(b.boardAsString()));
+	}
+	
+	/**
+	 * Tests that searching every move on its own thread finds the same move as a minimax search
+	 */
+	@Test public void testParallelSearch() {
+		Random rand = new Random(11);
+		ParallelSearch ai = new ParallelSearch(5);
+		for(int game = 0; game < 20; game++) {
+			Board b = randomBoard(rand, 1 + 2*rand.nextInt(10));
+			int[] expectedMove = new int[1];
+			minimax(b, 5, expectedMove);
+			int move = ai.bestMove(b);
+			Assert.assertTrue("The parallel search gave move "+move+" instead of move "+expectedMove[0]+":\n"+b.boardAsString(),
+					move == expectedMove[0]);
+		}
+	}
+	
+	/**
+	 * Tests that several threads sharing one table find the same move as a minimax search when limited to its depth
+	 */
+	@Test public void testLazySMP() {
+		Random rand = new Random(13);
+		LazySMP ai = new LazySMP(7, 4, 16, 0, 5);
+		for(int game = 0; game < 20; game++) {
+			Board b = randomBoard(rand, 1 + 2*rand.nextInt(10));
+			int[] expectedMove = new int[1];
+			int expectedValue = minimax(b, 5, expectedMove);
+			String before = b.boardAsString();
+			int move = ai.bestMove(b);
+			boolean decided = expectedValue == GTN.P1_WIN || expectedValue == GTN.P2_WIN;
+			Assert.assertTrue("The shared search gave move "+move+" instead of move "+expectedMove[0]+":\n"+before,
+					move == expectedMove[0] || (decided && !b.isFull(move)));
+			Assert.assertTrue("The search should leave the board the way it found it", before.equals(b.boardAsString()));
+		}
+		ai.shutdown();
+	}
+	
+	/**
+	 * Tests that Monte Carlo tree search takes wins and blocks losses, keeps its tree between moves and plays on boards of any size
+	 */
+	@Test public void testMonteCarlo() {
+		Random rand = new Random(17);
+		MonteCarlo ai = new MonteCarlo(1, 0, 2000);
+		for(int game = 0; game < 100; game++) {
+			Board b = randomBoard(rand, 5 + rand.nextInt(20));
+			Piece next = b.lastPiece().next();
+			boolean[] wins = new boolean[b.columnsOnBoard()];
+			boolean[] loses = new boolean[b.columnsOnBoard()];
+			boolean canWin = false;
+			boolean threatened = false;
+			for(int col = 0; col < b.columnsOnBoard(); col++) {
+				if(b.place(next, col)) {
+					wins[col] = b.gameWon();
+					canWin |= wins[col];
+					b.undo();
+				}
+				if(b.place(next.next(), col)) {
+					loses[col] = b.gameWon();
+					threatened |= loses[col];
+					b.undo();
+				}
+			}
+			String before = b.boardAsString();
+			int move = ai.bestMove(b);
+			Assert.assertTrue("The search should leave the board the way it found it", before.equals(b.boardAsString()));
+			Assert.assertTrue("Move "+move+" is not playable:\n"+before, move >= 0 && move < b.columnsOnBoard() && !b.isFull(move));
+			if(canWin)
+				Assert.assertTrue("Move "+move+" does not take the win:\n"+before, wins[move]);
+			else if(threatened)
+				Assert.assertTrue("Move "+move+" does not block the opponent's win:\n"+before, loses[move]);
+		}
+		Assert.assertTrue("Every move should play the random games it was given", ai.playouts() > 0 && ai.playouts()%2000 == 0);
+		
+		//the tree under the moves played is kept for the next move
+		Board b = new Board();
+		b.place(Piece.P1, 3);
+		b.place(Piece.P2, ai.bestMove(b));
+		b.place(Piece.P1, 3);
+		ai.bestMove(b);
+		Assert.assertTrue("The next move should start from the games already played under it", ai.reusedPlayouts() > 0);
+		b = new Board();
+		ai.bestMove(b);
+		Assert.assertTrue("A new game should start a new tree", ai.reusedPlayouts() == 0);
+		
+		//several trees on a board too big for one long
+		MonteCarlo parallel = new MonteCarlo(2, 50, 0);
+		b = new Board(12, 10, 5);
+		while(!b.gameWon() && !b.fullBoard() && b.piecesPlayed() < 10)
+			Assert.assertTrue("The search should give a playable move", b.place(b.lastPiece().next(), parallel.bestMove(b)));
+		parallel.shutdown();
+	}
+	
+	/**
+	 * Tests that an opening book gives the same moves as searching, for boards and their mirror images
+	 */
+	@Test public void testOpeningBook() throws IOException {
+		File f = File.createTempFile("test", ".book");
+		f.deleteOnExit();
+		new BookGenerator(7, 6, 3, 4).generate(f);
+		OpeningBook book = new OpeningBook(f);
+		SearchContext context = new SearchContext(7);
+		context.setBook(book);
+		int[][] openings = {{}, {0}, {6}, {2,3}, {4,3}, {5,5}};
+		for(int[] moves : openings) {
+			Board b = new Board();
+			Piece p = Piece.P1;
+			for(int col : moves) {
+				b.place(p, col);
+				p = p.next();
+			}
+			GTN searched = new GTN(b, 0, 4);
+			GTN booked = new GTN(b, 0, 4, context);
+			Assert.assertTrue("The board should have been in the book:\n"+b.boardAsString(), booked.fromBook());
+			//mirror images break ties between equal moves the other way, so compare the value of the book move instead of the move
+			b.place(p, booked.getBestMove());
+			int bookMoveValue = new GTN(b, 1, 4).evaluate();
+			b.undo();
+			Assert.assertTrue("The book gave move "+booked.getBestMove()+" instead of "+searched.getBestMove()+":\n"+b.boardAsString(),
+					bookMoveValue == searched.evaluate() && booked.evaluate() == searched.evaluate());
+		}
+		Board deep = randomBoard(new Random(5), 3);
+		Assert.assertTrue("Boards past the end of the book should be searched", !new GTN(deep, 0, 4, context).fromBook());
+		book.close();
+	}
+	
+	/**
+	 * Tests that games read back from a store are the games added, after the store is reopened,
+	 * and that the index finds the same games that reached a position as checking every game does
+	 */
+	@Test public void testGameStore() throws IOException {
+		File f = File.createTempFile("test", ".games");
+		f.deleteOnExit();
+		new File(f.getPath() + ".idx").deleteOnExit();
+		f.delete();
+		Random rand = new Random(18);
+		GameStore store = new GameStore(f, 7, 6, 4);
+		GameRecord[] games = new GameRecord[300];
+		int[] offsets = new int[games.length];
+		for(int i = 0; i < games.length; i++) {
+			Board b = new Board();
+			int length = 4 + rand.nextInt(40);
+			while(b.piecesPlayed() < length && !b.gameWon() && !b.fullBoard()) {
+				int col = rand.nextInt(7);
+				if(!b.isFull(col))
+					b.place(b.lastPiece().next(), col);
+			}
+			games[i] = new GameRecord(b);
+			offsets[i] = store.add(games[i]);
+		}
+		Assert.assertTrue("A full game should take 18 bytes", new GameRecord(new int[42], GameRecord.DRAW).size() == 18);
+		store.close();
+		
+		store = new GameStore(f, 7, 6, 4);
+		Assert.assertTrue("Every game should still be there", store.size() == games.length);
+		for(int i = 0; i < games.length; i++)
+			Assert.assertTrue("Game "+i+" should be "+games[i]+", not "+store.game(offsets[i]), store.game(offsets[i]).toString().equals(games[i].toString()));
+		Board position = games[0].replay(7, 6, 4, 2);
+		int[] scanned = store.gamesReaching(position);
+		store.buildIndex(4);
+		Assert.assertTrue("The index should cover 4 moves", store.indexedPlies() == 4);
+		int[] indexed = store.gamesReaching(position);
+		Assert.assertTrue("The index should find the same "+scanned.length+" games as a scan, not "+indexed.length,
+				scanned.length > 0 && Arrays.equals(scanned, indexed));
+		long key = Math.min(position.positionKey(), position.mirrorPositionKey());
+		int reached = 0;
+		for(GameRecord g : games) {
+			Board b = g.replay(7, 6, 4, Math.min(2, g.length()));
+			if(Math.min(b.positionKey(), b.mirrorPositionKey()) == key)
+				reached++;
+		}
+		Assert.assertTrue(reached+" games should have reached the position, not "+indexed.length, reached == indexed.length);
+		store.add(games[1]);
+		Assert.assertTrue("Adding a game should make the index out of date", store.indexedPlies() == 0 && store.size() == games.length + 1);
+		store.close();
+		
+		RandomAccessFile cut = new RandomAccessFile(f, "rw");
+		cut.setLength(cut.length() - 1);//as if the last game was only partly written
+		cut.close();
+		store = new GameStore(f, 7, 6, 4);
+		Assert.assertTrue("The cut off game should have been dropped", store.size() == games.length);
+		store.close();
+	}
+	
+	/**
+	 * Tests that the database of solved positions agrees with the solver about who wins on a small board,
+	 * and that a search using it plays the database's move without searching
+	 */
+	@Test public void testSolvedDatabase() throws IOException {
+		File f = File.createTempFile("test", ".db");
+		f.deleteOnExit();
+		SolvedDatabase.generate(f, 5, 4);
+		SolvedDatabase db = new SolvedDatabase(f);
+		Solver solver = new Solver(5, 4, 16);
+		Random rand = new Random(21);
+		for(int i = 0; i < 300; i++) {
+			Board b = new Board(5, 4);
+			int moves = rand.nextInt(16);
+			while(b.piecesPlayed() < moves) {
+				int col = rand.nextInt(5);
+				if(b.isFull(col))
+					continue;
+				b.place(b.lastPiece().next(), col);
+				if(b.gameWon())
+					b.undo();
+			}
+			int score = solver.solve(b);
+			int expected = score > 0 ? SolvedDatabase.WIN : score < 0 ? SolvedDatabase.LOSS : SolvedDatabase.DRAW;
+			Assert.assertTrue("The database gave "+db.value(b)+" instead of "+expected+" for:\n"+b.boardAsString(), db.value(b) == expected);
+			int move = db.bestMove(b);
+			b.place(b.lastPiece().next(), move);
+			int after = b.gameWon() ? 1 : b.fullBoard() ? 0 : -solver.solve(b);
+			b.undo();
+			Assert.assertTrue("The database's move "+move+" should keep the result for:\n"+b.boardAsString(), Integer.signum(after) == Integer.signum(score));
+		}
+		SearchContext context = new SearchContext(5);
+		context.setDatabase(db);
+		GTN tree = new GTN(new Board(5, 4), 0, 8, context);
+		Assert.assertTrue("The empty 5x4 board is a draw, looked up without searching", tree.solved() && tree.evaluate() == 0 && tree.stats().nodes() == 0);
+		db.close();
+	}
+	
+	/**
+	 * Tests that the solver agrees with a search all the way to the end of the game about who wins,
+	 * and that its best move keeps the same result
+	 */
+	@Test public void testSolver() {
+		Random rand = new Random(42);
+		Solver solver = new Solver(7, 6, 16);
+		for(int game = 0; game < 20; game++) {
+			Board b = randomBoard(rand, 28 + rand.nextInt(4));
+			boolean p1Turn = b.lastPiece() != Piece.P1;
+			int score = solver.solve(b);
+			int value = new GTN(b, 0, 42 - b.piecesPlayed()).evaluate();//every leaf is the end of the game
+			int expected = value == GTN.P1_WIN ? 1 : value == GTN.P2_WIN ? -1 : 0;
+			if(!p1Turn)
+				expected = -expected;
+			Assert.assertTrue("The solver gave "+score+" but the full search gave "+value+":\n"+b.boardAsString(), Integer.signum(score) == expected);
+			
+			int move = solver.bestMove(b);
+			Assert.assertTrue("Choosing a move should find the score "+score+", not "+solver.lastScore(), solver.lastScore() == score);
+			b.place(b.lastPiece().next(), move);
+			int after = b.gameWon() ? 1 : -Integer.signum(solver.solve(b));
+			Assert.assertTrue("The solver's move "+move+" changed the result:\n"+b.boardAsString(), after == Integer.signum(score));
+		}
+		SearchContext context = new SearchContext(7);
+		context.setSolver(solver, 14);
+		Board end = randomBoard(rand, 28);
+		GTN tree = new GTN(end, 0, 1, context);
+		Assert.assertTrue("Boards with 14 empty cells should be solved", tree.solved() && tree.getBestMove() == solver.bestMove(end));
+		Assert.assertTrue("Boards with 15 empty cells should be searched", !new GTN(randomBoard(rand, 27), 0, 1, context).solved());
+		
+		SearchContext stopped = new SearchContext(7);
+		stopped.stop();
+		Solver fresh = new Solver(7, 6, 16);
+		Board opening = randomBoard(rand, 6);
+		int quick = fresh.bestMove(opening, stopped);//would take minutes to finish
+		Assert.assertTrue("A stopped solver should still give a playable move, not "+quick, quick >= 0 && !opening.isFull(quick));
+		Assert.assertTrue("A stopped solver should leave nothing wrong in its table", fresh.solve(end) == solver.solve(end));
+		
+		Board b = new Board();
+		int[] moves = {3,3,2,2,1};//Player2 can't stop Player1 from winning on the next move
+		Piece p = Piece.P1;
+		for(int col : moves) {
+			b.place(p, col);
+			p = p.next();
+		}
+		int score = solver.solve(b);
+		Assert.assertTrue("Player2 should lose in 2 moves, not "+solver.movesToEnd(score, 5), score < 0 && solver.movesToEnd(score, 5) == 2);
+	}
+	
+	/**
+	 * Tests that the board hands out the shared pieces and works out the last piece from its bitboards
+	 */
+	@Test public void testSharedPieces() {
+		Board b = new Board();
+		Assert.assertTrue("Player1 should move first", b.lastPiece() == Piece.P2 && b.lastPiece().next() == Piece.P1);
+		b.place(Piece.P1, 3);
+		b.place(Piece.P2, 3);
+		Assert.assertTrue("Pieces on the board should be the shared pieces", b.pieceAt(3, 0) == Piece.P1 && b.pieceAt(3, 1) == Piece.P2);
+		Assert.assertTrue("Empty locations should be the shared empty piece", b.pieceAt(3, 2) == Piece.EMPTY);
+		Assert.assertTrue("Locations off the board should be the shared out of bounds piece", b.pieceAt(-1, 0) == Piece.OUT_OF_BOUNDS && b.pieceAt(3, 6).id() == Piece.OUT_OF_BOUNDS_ID);
+		Assert.assertTrue("Player2 played last", b.lastPiece() == Piece.P2);
+		b.undo();
+		Assert.assertTrue("Player1 played last after the undo", b.lastPiece() == Piece.P1 && b.copy().lastPiece() == Piece.P1);
+	}
+	
+	//plays random moves, alternating players starting with Player1, without ending the game
+	private static Board randomBoard(Random rand, int moves) {
+		Board b = new Board();
+		Piece p = Piece.P1;
+		for(int i = 0; i < moves; i++) {
+			int col = rand.nextInt(b.columnsOnBoard());
+			if(b.isFull(col)) {
+				i--;
+				continue;
+			}
+			b.place(p, col);
+			if(b.gameWon() || b.fullBoard()) {
+				b.undo();
+				i--;
+				continue;
+			}
+			p = p.next();
+		}
+		return b;
+	}
+	//a plain minimax search going through the columns in order, used as a reference for the game tree
+	private static int minimax(Board b, int depth, int[] bestMove) {
+		if(depth == 0 || b.gameWon() || b.fullBoard())
+			return b.evaluate();
+		boolean p1Turn = b.lastPiece() != Piece.P1;
+		int best = p1Turn ? GTN.P2_WIN : GTN.P1_WIN;
+		for(int col = 0; col < b.columnsOnBoard(); col++) {
+			if(b.isFull(col))
+				continue;
+			b.place(p1Turn ? Piece.P1 : Piece.P2, col);
+			int value = minimax(b, depth - 1, null);
+			b.undo();
+			if(p1Turn ? value >= best : value <= best) {
+				best = value;
+				if(bestMove != null)
+					bestMove[0] = col;
+				if(best == (p1Turn ? GTN.P1_WIN : GTN.P2_WIN))
+					break;
+			}
+		}
+		return best;
+	}
 }
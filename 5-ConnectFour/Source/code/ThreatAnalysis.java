@@ -0,0 +1,143 @@
+package code;
+
+/**
+ * Proves the result of a position from how the empty cells can be shared out, using the zugzwang rules of Connect Four endgames
+ * When an even number of cells are empty, the player who just moved can answer every move in the same column,
+ * taking the cell just above it.  Playing like that they end up with every cell on the rows of the other parity from the lowest empty
+ * cell of each column, which is the odd and even row rule: on an empty standard board Player2 gets every even row, counting the bottom row as 1,
+ * so an even threat of Player2's is one that gets played.  A column with an odd number of empty cells can't be answered in itself,
+ * so its lowest empty cell is paired with the lowest empty cell of another such column and a move in one is answered in the other.
+ * If the cells the player moving ends up with hold no line however they choose within the pairs, they can't win,
+ * and if the answering player's cells then always hold a line, the player moving loses.  Every way of pairing up the columns is tried.
+ * These are proofs rather than guesses, so the positions they decide can be scored without searching further.
+ * Only boards that fit in one long can be analyzed.
+ * @author Zach Kemphues
+ */
+public class ThreatAnalysis {
+	/** Nothing was proved, so the position has to be searched */
+	public static final int UNDECIDED = 0;
+	/** The player moving can't win, the best they can do is draw */
+	public static final int NO_WIN = 1;
+	/** The player moving loses */
+	public static final int LOSS = 2;
+
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int COL_BITS;
+	private final int WIN_LENGTH;
+	private final long BOARD; //every playable cell
+	private final long[] COLUMN; //every cell of each column
+	private final long[] ROWS; //every cell on the even rows and the odd rows, counting from 0
+	private final int[] DIRECTIONS; //the distance in bits between neighbouring cells of a line, for each direction a line can go
+
+	private final long[] _bases; //the lowest empty cell of each column with an odd number of empty cells
+	private int _baseCount;
+	private final long[] _first; //the pairs of lowest empty cells in the pairing being tried
+	private final long[] _second;
+
+	/**
+	 * Creates an analysis for boards of the given size
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param winLength - the number of pieces in a line needed to win
+	 */
+	public ThreatAnalysis(int cols, int rows, int winLength) {
+		if(cols*(rows+1) > Long.SIZE)
+			throw new IllegalArgumentException("A " + cols + "x" + rows + " board does not fit in a 64 bit bitboard");
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		COL_BITS = rows + 1;
+		WIN_LENGTH = winLength;
+		COLUMN = new long[cols];
+		ROWS = new long[2];
+		long board = 0;
+		for(int c = 0; c < cols; c++) {
+			COLUMN[c] = ((1L << rows) - 1) << c*COL_BITS;
+			board |= COLUMN[c];
+			for(int r = 0; r < rows; r++)
+				ROWS[r%2] |= 1L << (c*COL_BITS + r);
+		}
+		BOARD = board;
+		DIRECTIONS = new int[] {1, COL_BITS, COL_BITS - 1, COL_BITS + 1};//vertical, horizontal and both diagonals
+		_bases = new long[cols];
+		_first = new long[cols/2];
+		_second = new long[cols/2];
+	}
+	/**
+	 * @param b - a board
+	 * @return - true if boards the size of b can be analyzed
+	 */
+	public boolean fits(Board b) {
+		return b.compact() && b.columnsOnBoard() == NUM_COLS && b.rowsOnBoard() == NUM_ROWS && b.winLength() == WIN_LENGTH;
+	}
+	/**
+	 * Tries to prove the result of a board for the player whose turn it is
+	 * @param b - a board that fits() and the game is not over on
+	 * @return - LOSS or NO_WIN if that was proved, otherwise UNDECIDED
+	 */
+	public int analyze(Board b) {
+		boolean p1Turn = b.lastPiece() != Piece.P1;
+		return analyze(b.pieces(p1Turn), b.pieces(true) | b.pieces(false));
+	}
+	/**
+	 * Tries to prove the result of a position for the player whose turn it is
+	 * @param mover - the pieces of the player moving, laid out like Board.pieces()
+	 * @param mask - every piece on the board
+	 * @return - LOSS or NO_WIN if that was proved, otherwise UNDECIDED
+	 */
+	public int analyze(long mover, long mask) {
+		long empty = BOARD & ~mask;
+		if(Long.bitCount(empty)%2 != 0)//the player moving isn't the one answering
+			return UNDECIDED;
+		long lower = 0; //the cells the player moving ends up with
+		long upper = 0; //the cells the answering player ends up with
+		_baseCount = 0;
+		for(int col = 0; col < NUM_COLS; col++) {
+			long cells = empty & COLUMN[col];
+			if(cells == 0)
+				continue;
+			long bottom = cells & -cells;
+			long same = ROWS[(Long.numberOfTrailingZeros(bottom) - col*COL_BITS)%2]; //the rows the lowest empty cell is on
+			if(Long.bitCount(cells)%2 == 0) {
+				lower |= cells & same;
+				upper |= cells & ~same;
+			}
+			else {//the lowest empty cell is paired with another column's, and the rest are answered in the column
+				_bases[_baseCount++] = bottom;
+				lower |= cells & ~same;
+				upper |= cells & same & ~bottom;
+			}
+		}
+		mover |= lower;
+		if(Board.connects(mover, DIRECTIONS, WIN_LENGTH))//no pairing can stop the player moving getting a line
+			return UNDECIDED;
+		return pair(0, 0, mover, (mask & ~mover) | upper);
+	}
+	//returns the best proof found over every way of pairing up the lowest empty cells not used yet
+	private int pair(int used, int pairs, long mover, long answerer) {
+		if(used == (1 << _baseCount) - 1)
+			return choose(0, pairs, mover, answerer);
+		int a = Integer.numberOfTrailingZeros(~used);
+		int best = UNDECIDED;
+		for(int b = a + 1; b < _baseCount && best != LOSS; b++) {
+			if((used & (1 << b)) != 0)
+				continue;
+			_first[pairs] = _bases[a];
+			_second[pairs] = _bases[b];
+			best = Math.max(best, pair(used | (1 << a) | (1 << b), pairs + 1, mover, answerer));
+		}
+		return best;
+	}
+	//returns what is proved for every way the player moving can take one cell of each pair from the given one on
+	private int choose(int pair, int pairs, long mover, long answerer) {
+		if(pair == pairs) {
+			if(Board.connects(mover, DIRECTIONS, WIN_LENGTH))
+				return UNDECIDED;
+			return Board.connects(answerer, DIRECTIONS, WIN_LENGTH) ? LOSS : NO_WIN;
+		}
+		int result = choose(pair + 1, pairs, mover | _first[pair], answerer | _second[pair]);
+		if(result == UNDECIDED)
+			return result;
+		return Math.min(result, choose(pair + 1, pairs, mover | _second[pair], answerer | _first[pair]));
+	}
+}
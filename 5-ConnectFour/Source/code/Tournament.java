@@ -0,0 +1,357 @@
+package code;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays two AI players against each other many times without a user interface, to measure how strong one is compared to the other
+ * Each game starts from a few random moves so the games differ, and every opening is played twice with the players switching colors.
+ * Games are played in parallel on all cores, and each one is written to a CSV file as soon as it finishes.
+ * Players are described by a comma separated list of settings:
+ *   depth=N     search N plies deep, 0 for no limit
+ *   time=MS     iterative deepening with MS milliseconds per move
+ *   nodes=N     iterative deepening with N nodes per move
+ *   solver=N    play perfectly once N or fewer cells are empty
+ *   threats=1   score positions the odd and even threats prove won without searching them
+ *   parallel=N  search every move on its own thread to depth N, ignoring the other settings
+ *   mcts=N      Monte Carlo tree search on N threads, limited by time and nodes, which count random games played instead
+ *   perfect     always play perfectly, ignoring the other settings
+ * For example "depth=8" or "time=100,solver=16".
+ * @author Zach Kemphues
+ */
+public class Tournament {
+	private static final double Z = 1.96; //standard deviations for a 95% confidence interval
+	private static final int DEFAULT_GAMES = 100;
+	private static final int DEFAULT_OPENING = 4;
+	private static final int SOLVER_TABLE_BITS = 20;
+
+	private final String PLAYER_A;
+	private final String PLAYER_B;
+	private final int NUM_COLS;
+	private final int NUM_ROWS;
+	private final int OPENING_PLIES;
+
+	private int _wins; //games won, drawn and lost by player A
+	private int _draws;
+	private int _losses;
+	private long _length; //the total number of moves in every game
+	private long[] _time; //total nanoseconds spent choosing moves, for A then B
+	private long[] _moves; //moves chosen, for A then B
+	private long[] _nodes; //nodes searched, for A then B
+
+	/**
+	 * Prepares a tournament between two players
+	 * @param a - the settings of the first player
+	 * @param b - the settings of the second player
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param openingPlies - the number of random moves played at the start of each game
+	 */
+	public Tournament(String a, String b, int cols, int rows, int openingPlies) {
+		PLAYER_A = a;
+		PLAYER_B = b;
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		OPENING_PLIES = openingPlies;
+		new Entrant(a, cols, rows).shutdown();//fail now if either player's settings are wrong
+		new Entrant(b, cols, rows).shutdown();
+		_time = new long[2];
+		_moves = new long[2];
+		_nodes = new long[2];
+	}
+	/**
+	 * Plays the games, adding their results to the totals
+	 * @param games - the number of games to play, which should be even so each opening is played with both colors
+	 * @param threads - the number of games to play at once
+	 * @param csv - where to write a line for each game as it finishes, or null for nowhere
+	 * @throws IOException - if the results cannot be written
+	 */
+	public void play(int games, int threads, Writer csv) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ExecutorCompletionService<Game> finished = new ExecutorCompletionService<Game>(pool);
+			for(int i = 0; i < games; i++) {
+				final int game = i;
+				finished.submit(() -> playGame(game));
+			}
+			if(csv != null)
+				csv.write("game,opening,first,result,length,a_ms,a_moves,a_nodes,b_ms,b_moves,b_nodes\n");
+			for(int i = 0; i < games; i++) {
+				Game g = finished.take().get();
+				record(g);
+				if(csv != null) {
+					csv.write(g._index + "," + g._opening + "," + (g._aFirst ? "A" : "B") + "," + g.result() + "," + g._length + "," +
+							g._time[0]/1000000 + "," + g._moves[0] + "," + g._nodes[0] + "," + g._time[1]/1000000 + "," + g._moves[1] + "," + g._nodes[1] + "\n");
+					csv.flush();
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException e) {
+			throw new IllegalStateException("A game failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	//plays one game, with new players so nothing is carried over from other games
+	private Game playGame(int index) {
+		Game g = new Game(index);
+		Entrant[] players = {new Entrant(PLAYER_A, NUM_COLS, NUM_ROWS), new Entrant(PLAYER_B, NUM_COLS, NUM_ROWS)};
+		Board b = new Board(NUM_COLS, NUM_ROWS);
+		Random rand = new Random(index/2);//both games of a pair get the same opening
+		String opening = "";
+		while(b.piecesPlayed() < OPENING_PLIES) {
+			int col = rand.nextInt(NUM_COLS);
+			if(!b.place(b.lastPiece().next(), col))
+				continue;
+			if(b.gameWon() || b.fullBoard()) {//the opening should leave the game to the players
+				b.undo();
+				continue;
+			}
+			opening += col;
+		}
+		g._opening = opening;
+		while(!b.gameWon() && !b.fullBoard()) {
+			Piece next = b.lastPiece().next();
+			int player = (next == Piece.P1) == g._aFirst ? 0 : 1;
+			long start = System.nanoTime();
+			int col = players[player].bestMove(b);
+			g._time[player] += System.nanoTime() - start;
+			g._moves[player]++;
+			if(!b.place(next, col))
+				throw new IllegalStateException((player == 0 ? PLAYER_A : PLAYER_B) + " played in full column " + col);
+		}
+		for(int p = 0; p < 2; p++) {
+			g._nodes[p] = players[p].nodes();
+			players[p].shutdown();
+		}
+		g._length = b.piecesPlayed();
+		if(b.gameWon())
+			g._winner = (b.lastPiece() == Piece.P1) == g._aFirst ? 0 : 1;
+		return g;
+	}
+	//adds a game to the totals
+	private void record(Game g) {
+		if(g._winner == 0)
+			_wins++;
+		else if(g._winner == 1)
+			_losses++;
+		else
+			_draws++;
+		_length += g._length;
+		for(int p = 0; p < 2; p++) {
+			_time[p] += g._time[p];
+			_moves[p] += g._moves[p];
+			_nodes[p] += g._nodes[p];
+		}
+	}
+	/**
+	 * @return - the number of games player A won
+	 */
+	public int wins() {
+		return _wins;
+	}
+	/**
+	 * @return - the number of games that were drawn
+	 */
+	public int draws() {
+		return _draws;
+	}
+	/**
+	 * @return - the number of games player A lost
+	 */
+	public int losses() {
+		return _losses;
+	}
+	/**
+	 * @return - the number of games played
+	 */
+	public int games() {
+		return _wins + _draws + _losses;
+	}
+	/**
+	 * @return - player A's score, counting a win as 1 and a draw as 1/2, divided by the number of games
+	 */
+	public double score() {
+		return games() == 0 ? 0 : (_wins + _draws/2.0)/games();
+	}
+	/**
+	 * Returns a 95% confidence interval for player A's true score, using the Wilson score interval
+	 * Draws are counted as half a win, which makes the interval slightly wider than it needs to be.
+	 * @return - the lowest and highest likely score
+	 */
+	public double[] confidence() {
+		int n = games();
+		if(n == 0)
+			return new double[] {0, 1};
+		double p = score();
+		double z2 = Z*Z;
+		double center = (p + z2/(2*n))/(1 + z2/n);
+		double spread = Z*Math.sqrt(p*(1 - p)/n + z2/(4.0*n*n))/(1 + z2/n);
+		return new double[] {Math.max(0, center - spread), Math.min(1, center + spread)};
+	}
+	/**
+	 * @param player - 0 for player A, 1 for player B
+	 * @return - the average number of milliseconds the player took to choose a move
+	 */
+	public double averageMillis(int player) {
+		return _moves[player] == 0 ? 0 : _time[player]/1e6/_moves[player];
+	}
+	/**
+	 * @param player - 0 for player A, 1 for player B
+	 * @return - the number of nodes the player searched each second, or 0 if the player does not count them
+	 */
+	public double nodesPerSecond(int player) {
+		return _time[player] == 0 ? 0 : _nodes[player]*1e9/_time[player];
+	}
+	/**
+	 * @return - the average number of pieces on the board at the end of a game
+	 */
+	public double averageLength() {
+		return games() == 0 ? 0 : (double)_length/games();
+	}
+	/**
+	 * @return - a description of the results so far
+	 */
+	public String summary() {
+		double[] interval = confidence();
+		String s = "A: " + PLAYER_A + "\nB: " + PLAYER_B + "\n";
+		s += String.format("A won %d, drew %d and lost %d of %d games, scoring %.3f (95%% confidence %.3f to %.3f)%n",
+				_wins, _draws, _losses, games(), score(), interval[0], interval[1]);
+		s += String.format("Average game length %.1f moves%n", averageLength());
+		for(int p = 0; p < 2; p++)
+			s += String.format("%s: %.1f ms per move, %.0f nodes per second%n", p == 0 ? "A" : "B", averageMillis(p), nodesPerSecond(p));
+		return s;
+	}
+
+	//the result of a single game
+	private static class Game {
+		private int _index;
+		private String _opening;
+		private boolean _aFirst; //true if player A moved first
+		private int _winner; //0 for A, 1 for B, -1 for a draw
+		private int _length;
+		private long[] _time;
+		private long[] _moves;
+		private long[] _nodes;
+
+		public Game(int index) {
+			_index = index;
+			_aFirst = index%2 == 0;
+			_winner = -1;
+			_time = new long[2];
+			_moves = new long[2];
+			_nodes = new long[2];
+		}
+		public String result() {
+			return _winner == 0 ? "A" : _winner == 1 ? "B" : "draw";
+		}
+	}
+
+	//a player built from its settings, which keeps track of how many nodes it searched
+	private static class Entrant implements Engine {
+		private Engine _engine;
+		private SearchContext _context;
+		private Solver _solver;
+		private MonteCarlo _mcts;
+
+		public Entrant(String settings, int cols, int rows) {
+			int depth = 0;
+			long time = 0;
+			long nodes = 0;
+			int solverCells = 0;
+			int mctsThreads = 0;
+			boolean threats = false;
+			for(String setting : settings.split(",")) {
+				String[] pair = setting.trim().split("=");
+				String name = pair[0];
+				if(name.equals("perfect")) {
+					_solver = new Solver(cols, rows, SOLVER_TABLE_BITS);
+					_engine = _solver;
+					return;
+				}
+				if(pair.length != 2)
+					throw new IllegalArgumentException("Expected name=value instead of \"" + setting + "\"");
+				long value = Long.parseLong(pair[1]);
+				if(name.equals("depth"))
+					depth = (int)value;
+				else if(name.equals("time"))
+					time = value;
+				else if(name.equals("nodes"))
+					nodes = value;
+				else if(name.equals("solver"))
+					solverCells = (int)value;
+				else if(name.equals("threats"))
+					threats = value != 0;
+				else if(name.equals("mcts"))
+					mctsThreads = (int)value;
+				else if(name.equals("parallel")) {
+					_engine = new ParallelSearch((int)value);
+					return;
+				}
+				else
+					throw new IllegalArgumentException("Unknown setting \"" + name + "\"");
+			}
+			if(mctsThreads > 0) {
+				_mcts = new MonteCarlo(mctsThreads, time, nodes);
+				_engine = _mcts;
+				return;
+			}
+			if(depth == 0 && time == 0 && nodes == 0)
+				throw new IllegalArgumentException("\"" + settings + "\" would search to the end of the game, give a depth, time or nodes");
+			_context = new SearchContext(cols);
+			_context.setThreatAnalysis(threats);
+			if(solverCells > 0) {
+				_solver = new Solver(cols, rows, SOLVER_TABLE_BITS);
+				_context.setSolver(_solver, solverCells);
+			}
+			_engine = new IterativeDeepening(_context, time, nodes, depth);
+		}
+		@Override
+		public int bestMove(Board b) {
+			return _engine.bestMove(b);
+		}
+		public long nodes() {
+			long n = 0;
+			if(_context != null)
+				n += _context.totalNodes();
+			if(_solver != null)
+				n += _solver.nodes();
+			if(_mcts != null)
+				n += _mcts.playouts();
+			return n;
+		}
+		public void shutdown() {
+			if(_mcts != null)
+				_mcts.shutdown();
+		}
+	}
+
+	/**
+	 * Plays a tournament on the standard board and prints the results
+	 * @param args - the settings of the two players, then optionally the number of games, the CSV file to write and the number of threads
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("Usage: Tournament <player A> <player B> [games] [csv file] [threads]");
+			System.err.println("Players are settings like \"depth=8\" or \"time=100,solver=16\", see the documentation of code.Tournament");
+			return;
+		}
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		Tournament t = new Tournament(args[0], args[1], 7, 6, DEFAULT_OPENING);
+		Writer csv = args.length > 3 ? new FileWriter(args[3]) : null;
+		try {
+			t.play(games, threads, csv);
+		} finally {
+			if(csv != null)
+				csv.close();
+		}
+		System.out.print(t.summary());
+	}
+}
@@ -0,0 +1,170 @@
+package code;
+
+/**
+ * A fixed size table of search results, indexed by board hash, so that a position reached through different
+ * move orders is only searched once
+ * Entries are kept in two primitive arrays, a key and a packed data word per slot, taking 16 bytes per entry.
+ * Each entry remembers the generation it was stored in, see newSearch(), so entries from positions the game has moved past
+ * make way for new ones instead of filling the table because they were searched deeper.
+ * @author Zach Kemphues
+ */
+public class TranspositionTable {
+	/** Replacement policy that only overwrites an entry from the current generation with one searched at least as deep */
+	public static final int DEPTH_PREFERRED = 0;
+	/** Replacement policy that always overwrites the old entry */
+	public static final int ALWAYS_REPLACE = 1;
+
+	/** The stored score is the exact value of the position */
+	public static final int EXACT = 1;
+	/** The stored score is a lower bound on the value of the position */
+	public static final int LOWER = 2;
+	/** The stored score is an upper bound on the value of the position */
+	public static final int UPPER = 3;
+
+	protected long[] _keys;
+	protected long[] _data;//score in the low 32 bits, then 8 bits of depth, 8 bits of move+1, 2 bits of bound and 8 bits of generation
+	protected final int MASK;
+	protected final int POLICY;
+	protected int _generation; //stored in every new entry, counting up by one for each newSearch() and wrapping at 256
+
+	private long _hits;
+	private long _misses;
+	private long _collisions;
+
+	/**
+	 * Creates an empty table with 2^bits entries
+	 * @param bits - the log base 2 of the number of entries, each entry takes 16 bytes
+	 * @param policy - DEPTH_PREFERRED or ALWAYS_REPLACE
+	 */
+	public TranspositionTable(int bits, int policy) {
+		if(bits < 1 || bits > 30)
+			throw new IllegalArgumentException("A table can have between 2^1 and 2^30 entries, not 2^" + bits);
+		if(policy != DEPTH_PREFERRED && policy != ALWAYS_REPLACE)
+			throw new IllegalArgumentException("Unknown replacement policy " + policy);
+		_keys = new long[1 << bits];
+		_data = new long[1 << bits];
+		MASK = (1 << bits) - 1;
+		POLICY = policy;
+	}
+	/**
+	 * Looks up a position in the table
+	 * @param key - the hash of the position
+	 * @return - the packed entry for the position, or 0 if it is not in the table.  Use the static methods to unpack it.
+	 */
+	public long probe(long key) {
+		int i = index(key);
+		long data = _data[i];
+		if(data != 0 && _keys[i] == key) {
+			_hits++;
+			return data;
+		}
+		_misses++;
+		if(data != 0)
+			_collisions++;
+		return 0;
+	}
+	/**
+	 * Stores the result of searching a position, if the replacement policy allows it
+	 * @param key - the hash of the position
+	 * @param depth - the number of plies searched below the position
+	 * @param score - the value found for the position
+	 * @param move - the best move found, or -1 if there is none
+	 * @param bound - EXACT, LOWER or UPPER depending on how the score relates to the true value
+	 */
+	public void store(long key, int depth, int score, int move, int bound) {
+		int i = index(key);
+		long old = _data[i];
+		if(POLICY == DEPTH_PREFERRED && old != 0 && _keys[i] != key && generation(old) == _generation && depth(old) > depth)
+			return;
+		_keys[i] = key;
+		_data[i] = pack(depth, score, move, bound, _generation);
+	}
+	/**
+	 * Starts a new generation, after which every entry already in the table can be replaced by any new one however deep it was searched
+	 * The old entries can still be probed until they are replaced.  Call this for each move played,
+	 * so that positions the game can no longer reach, like the searches of replies that were never played, don't stay for good.
+	 */
+	public void newSearch() {
+		_generation = (_generation + 1) & 0xFF;
+	}
+	/**
+	 * Empties the table and resets the counters
+	 */
+	public void clear() {
+		for(int i = 0; i <= MASK; i++) {
+			_keys[i] = 0;
+			_data[i] = 0;
+		}
+		_hits = 0;
+		_misses = 0;
+		_collisions = 0;
+	}
+	//returns the slot a key is stored in
+	protected int index(long key) {
+		return (int)(key ^ (key >>> 32)) & MASK;
+	}
+	//packs an entry into a single long, which is never 0 since the bound is never 0
+	static long pack(int depth, int score, int move, int bound, int generation) {
+		return (score & 0xFFFFFFFFL) | ((long)(depth & 0xFF) << 32) | ((long)((move + 1) & 0xFF) << 40) | ((long)bound << 48)
+				| ((long)(generation & 0xFF) << 50);
+	}
+	/**
+	 * @param entry - an entry returned by probe
+	 * @return - the score stored in the entry
+	 */
+	public static int score(long entry) {
+		return (int)entry;
+	}
+	/**
+	 * @param entry - an entry returned by probe
+	 * @return - the depth the entry was searched to
+	 */
+	public static int depth(long entry) {
+		return (int)(entry >>> 32) & 0xFF;
+	}
+	/**
+	 * @param entry - an entry returned by probe
+	 * @return - the best move stored in the entry, or -1 if there is none
+	 */
+	public static int move(long entry) {
+		return ((int)(entry >>> 40) & 0xFF) - 1;
+	}
+	/**
+	 * @param entry - an entry returned by probe
+	 * @return - EXACT, LOWER or UPPER
+	 */
+	public static int bound(long entry) {
+		return (int)(entry >>> 48) & 0x3;
+	}
+	/**
+	 * @param entry - an entry returned by probe
+	 * @return - the generation the entry was stored in
+	 */
+	public static int generation(long entry) {
+		return (int)(entry >>> 50) & 0xFF;
+	}
+	/**
+	 * @return - the number of entries the table can hold
+	 */
+	public int size() {
+		return MASK + 1;
+	}
+	/**
+	 * @return - the number of probes that found their position
+	 */
+	public long hits() {
+		return _hits;
+	}
+	/**
+	 * @return - the number of probes that did not find their position
+	 */
+	public long misses() {
+		return _misses;
+	}
+	/**
+	 * @return - the number of misses where the slot was holding a different position
+	 */
+	public long collisions() {
+		return _collisions;
+	}
+}
@@ -2,103 +2,182 @@ package gui;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import javax.swing.JPanel;
 
 import code.Board;
 import code.Piece;
 
 /**
- * A specialized JPanel used to draw a single column of a connect four board.
- * 
+ * A specialized JPanel used to draw a connect four board.
+ * The board is kept drawn in an image, and each cell is drawn into it from a sprite made once for every size and color,
+ * so painting only redraws the cells that changed since they were last drawn and copies the part of the image Swing asked for.
+ * Whoever changes the board or the highlighted column calls pieceAdded() or setHighlight(), which repaint just the cells affected.
+ *
  * @author Zach Kemphues
  */
 public class DrawingPane extends JPanel {
 	private static final long serialVersionUID = 1L;
-	
+
 	private static final Color P1 = new Color(0,150,0); //green
 	private static final Color P2 = new Color(150,0,150);//purple
 	private static final Color EMPTY = Color.WHITE;
+	private static final Color BACKGROUND = Color.BLACK;
 	private static final Color H_COL = new Color(40,40,40);//dark grey
 	private static final Color H_COL_FULL = new Color(100,0,0);//dark red
 	private static final Color H_P1 = new Color(150,255,150);//light green
 	private static final Color H_P2 = new Color(255,150,255);//light purple
-	
+	private static final Color[] PIECE_COLORS = {EMPTY, P1, P2, H_P1, H_P2};//a cell's look is one of these on one of the backgrounds
+	private static final Color[] BACKGROUNDS = {BACKGROUND, H_COL, H_COL_FULL};
+	private static final int NOT_DRAWN = -1;
+
 	private Board _board;
-	private int _col;
-	private boolean _highlighted;
-	
+	private int _highlighted; //the column the mouse is over, or -1 for none
+	private BufferedImage _image; //the whole board as it was last drawn
+	private BufferedImage[] _sprites; //each look a cell can have, drawn at the current cell size
+	private int[] _drawn; //the look each cell was last drawn with in _image, by col*rows+row
+	private int _cellWidth;
+	private int _cellHeight;
+
 	/**
-	 * Initializes the pane and keeps track of the column of the game board it represents
+	 * Initializes the pane for the board it draws
 	 * @param b - the game board being played on
-	 * @param col - the column of the board represented by this pane
 	 */
-	public DrawingPane(Board b, int col) {
+	public DrawingPane(Board b) {
 		super();
-		_col = col;
 		_board = b;
-		_highlighted = false;
+		_highlighted = -1;
+		_drawn = new int[b.columnsOnBoard()*b.rowsOnBoard()];
+		setOpaque(true);
 	}
 	/**
-	 * Toggles the highlighted state of the column.  Highlighting indicates whether a piece can be placed in the column
-	 * and is only active when the mouse is over the pane.
+	 * Highlights a column, showing whether a piece can be placed in it and where it would land.
+	 * Only the columns that gain or lose the highlight are repainted.
+	 * @param col - the column the mouse is over, or -1 for none
 	 */
-	public void toggleHighlight() {
-		_highlighted = !_highlighted;
+	public void setHighlight(int col) {
+		if(col == _highlighted)
+			return;
+		repaintColumn(_highlighted);
+		_highlighted = col;
+		repaintColumn(col);
 	}
 	/**
-	 * @return - the column of the board represented by this pane
+	 * Repaints the cells a piece just placed in a column changed: the piece itself, the cell above it where the next piece would land,
+	 * and the highlighted column, whose colors depend on whose turn it is and whether the game is over
+	 * @param col - the column the piece was placed in
 	 */
-	public int getCol() {
-		return _col;
+	public void pieceAdded(int col) {
+		int row = _board.rowsOnBoard() - 1;
+		while(row > 0 && _board.pieceAt(col, row) == Piece.EMPTY)
+			row--;
+		Rectangle r = cellBounds(col, row);
+		if(row + 1 < _board.rowsOnBoard())
+			r.add(cellBounds(col, row + 1));
+		repaint(r);
+		repaintColumn(_highlighted);
+	}
+	/**
+	 * @param x - a distance from the left of the pane
+	 * @return - the column of the board at x, or -1 if x is not on the board
+	 */
+	public int columnAt(int x) {
+		int width = getWidth()/_board.columnsOnBoard();
+		if(width == 0 || x < 0 || x >= width*_board.columnsOnBoard())
+			return -1;
+		return x/width;
+	}
+	//repaints every cell of a column, unless col is -1
+	private void repaintColumn(int col) {
+		if(col >= 0)
+			repaint(new Rectangle(col*(getWidth()/_board.columnsOnBoard()), 0, getWidth()/_board.columnsOnBoard(), getHeight()));
 	}
-	
+	//returns the area a cell is drawn in, with the top row at the top of the pane
+	private Rectangle cellBounds(int col, int row) {
+		int width = getWidth()/_board.columnsOnBoard();
+		int height = getHeight()/_board.rowsOnBoard();
+		return new Rectangle(col*width, (_board.rowsOnBoard() - 1 - row)*height, width, height);
+	}
+	//returns the index in _sprites of how a cell should look right now
+	private int look(int col, int row) {
+		int background = 0;
+		boolean highlight = col == _highlighted && !_board.gameWon();
+		if(highlight)
+			background = _board.isFull(col) ? 2 : 1; //whether a piece can be placed in this column
+		Piece p = _board.pieceAt(col, row);
+		int piece;
+		if(p == Piece.P1)
+			piece = 1;
+		else if(p == Piece.P2)
+			piece = 2;
+		else if(highlight && (row == 0 || _board.pieceAt(col, row - 1) != Piece.EMPTY))
+			piece = _board.lastPiece() == Piece.P2 ? 3 : 4; //where the next piece will land
+		else
+			piece = 0;
+		return piece*BACKGROUNDS.length + background;
+	}
+	//draws every look a cell can have at the current cell size
+	private void makeSprites() {
+		_sprites = new BufferedImage[PIECE_COLORS.length*BACKGROUNDS.length];
+		int size = 4*Math.min(_cellWidth, _cellHeight)/5;
+		for(int p = 0; p < PIECE_COLORS.length; p++) {
+			for(int b = 0; b < BACKGROUNDS.length; b++) {
+				BufferedImage sprite = new BufferedImage(_cellWidth, _cellHeight, BufferedImage.TYPE_INT_RGB);
+				Graphics2D g = sprite.createGraphics();
+				g.setColor(BACKGROUNDS[b]);
+				g.fillRect(0, 0, _cellWidth, _cellHeight);
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g.setColor(PIECE_COLORS[p]);
+				g.fillOval((_cellWidth - size)/2, (_cellHeight - size)/2, size, size);
+				g.dispose();
+				_sprites[p*BACKGROUNDS.length + b] = sprite;
+			}
+		}
+	}
+
 	@Override public void paintComponent(Graphics g) {
-		//draw the background with the correct color
-		g.setColor(this.getBackground());
-		if(_highlighted && !_board.gameWon()) {
-			if(_board.isFull(_col))
-				g.setColor(H_COL_FULL); //indicates that a piece cannot be placed in this column
-			else
-				g.setColor(H_COL); //indicates that a piece can be placed in this column
+		int cols = _board.columnsOnBoard();
+		int rows = _board.rowsOnBoard();
+		if(_image == null || _image.getWidth() != getWidth() || _image.getHeight() != getHeight()) {//start again at the new size
+			_image = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), BufferedImage.TYPE_INT_RGB);
+			Graphics2D background = _image.createGraphics();
+			background.setColor(BACKGROUND);
+			background.fillRect(0, 0, _image.getWidth(), _image.getHeight());
+			background.dispose();
+			_cellWidth = getWidth()/cols;
+			_cellHeight = getHeight()/rows;
+			if(_cellWidth > 0 && _cellHeight > 0)
+				makeSprites();
+			Arrays.fill(_drawn, NOT_DRAWN);
 		}
-		g.fillRect(0,0,this.getWidth(), this.getHeight());
-		
-		//draw all the pieces with the correct color for each, including faded colors indicating where the next piece will fall
-		for(int row = 0; row < _board.rowsOnBoard(); row++) {
-			Piece p = _board.pieceAt(_col, _board.rowsOnBoard() - row - 1);
-			Color c;
-			
-			if(p.toString().equals("__")) {//The location is empty
-				Piece next = _board.pieceAt(_col, _board.rowsOnBoard()-row-2);
-				if(!next.toString().equals("__") && _highlighted && !_board.gameWon()) { //if either the bottom of the board, or another piece is below
-					if(_board.lastPiece().toString().equals("P2"))
-						c = H_P1;	//highlight the location the player's next piece will land
-					else
-						c = H_P2;
+		Rectangle clip = g.getClipBounds();
+		if(clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		if(_cellWidth > 0 && _cellHeight > 0) {
+			//bring the cells Swing asked for up to date, redrawing only the ones that look different now
+			Graphics2D image = null;
+			int firstCol = Math.max(0, clip.x/_cellWidth);
+			int lastCol = Math.min(cols - 1, (clip.x + clip.width - 1)/_cellWidth);
+			int topRow = Math.min(rows - 1, rows - 1 - clip.y/_cellHeight);
+			int bottomRow = Math.max(0, rows - 1 - (clip.y + clip.height - 1)/_cellHeight);
+			for(int col = firstCol; col <= lastCol; col++) {
+				for(int row = bottomRow; row <= topRow; row++) {
+					int look = look(col, row);
+					if(_drawn[col*rows + row] == look)
+						continue;
+					if(image == null)
+						image = _image.createGraphics();
+					image.drawImage(_sprites[look], col*_cellWidth, (rows - 1 - row)*_cellHeight, null);
+					_drawn[col*rows + row] = look;
 				}
-				else
-					c = EMPTY;
 			}
-			else if(p.toString().equals("P1"))
-				c = P1;
-			else
-				c = P2;
-			g.setColor(c);
-			int width = this.getWidth();
-			int height = this.getHeight();
-			int n = _board.rowsOnBoard();
-			int xOffset;
-			int yOffset;
-			int size;
-			//determine the appropriate piece size
-			if(width <= height/n)
-				size = 4*width/5;
-			else 
-				size = 4*height/(5*n);
-			//determine offsets so that the pieces are centered and evenly spaced in the column
-			xOffset = (width-size)/2;
-			yOffset = size/8;
-			g.fillOval(xOffset, yOffset + (size+yOffset*2)*row, size, size);
+			if(image != null)
+				image.dispose();
 		}
+		g.drawImage(_image, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, null);
 	}
 }
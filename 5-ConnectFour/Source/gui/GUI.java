@@ -3,155 +3,342 @@ package gui;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import javax.swing.*;
 
 import code.*;
 
 /**
  * A graphical board to play connect four against a computer opponent.  The player will always go first.
+ * The computer's moves are searched on a background thread so the window keeps responding while it thinks,
+ * with the deepest search so far shown in the title bar.  It keeps thinking about the player's possible moves
+ * while waiting for them, so it can often answer right away.
+ * The time from each click to the computer's reply is recorded as a ReplyEvent for Flight Recorder, and counted in a histogram
+ * that is printed when the program exits.
+ * Every game played is added to the game store "ConnectFour.games" when the board is reset, if the board is small enough to be stored.
+ * On boards too big for one long the computer plays by Monte Carlo tree search instead, which still plays well when searching
+ * a few plies deep is all the time allows.
  * 
  * @author Zach Kemphues
  */
-public class GUI implements MouseListener{
+public class GUI implements MouseListener, MouseMotionListener{
 	private static final int PIECE_SIZE = 100;//starting piece size
-	private static final int NUM_ROWS = 6;
-	private static final int NUM_COLS = 7;
+	private static final int BOARD_SIZE = 800;//largest starting size of the board, pieces are made smaller to fit big boards
+	private final int NUM_ROWS;
+	private final int NUM_COLS;
+	private final int WIN_LENGTH;
+	private static final int AI_TIME = 1000;//milliseconds the computer may think for each move
+	private static final int SOLVER_CELLS = 20;//the computer plays perfectly once this many cells or fewer are empty
+	private static final String BOOK_FILE = "ConnectFour.book";//opening book made by BookGenerator, used if it exists
+	private static final String GAMES_FILE = "ConnectFour.games";//every game played is kept here
 	
 	private Board _game;
-	private JPanel _boardArea;
-	private DrawingPane[] _col;
+	private DrawingPane _boardArea;
 	private JFrame _frame;
 	private Piece _player;
 	private boolean _aiEnabled;
+	private IterativeDeepening _ai;
+	private Ponderer _ponderer; //thinks about the player's possible moves while they decide
+	private MonteCarlo _mcts; //plays instead of _ponderer on big boards, or null
+	private AIMove _thinking; //the search for the computer's move, or null if it is the player's turn
+	private OpeningBook _book;
+	private SolvedDatabase _database; //every position of the board solved, made by SolvedDatabase, or null if there isn't one
+	private LatencyHistogram _latency; //click to reply times of every game
+	private GameStore _games; //where finished games are kept, or null if they can't be
 
 	/**
-	 * Completely sets up a new board and the gui for it
+	 * Completely sets up a new standard board and the gui for it
 	 */
 	public GUI() {
+		this(7, 6, Board.DEFAULT_WIN_LENGTH);
+	}
+	/**
+	 * Completely sets up a new board of any size and the gui for it
+	 * @param cols - the number of columns on the board
+	 * @param rows - the number of rows on the board
+	 * @param winLength - the number of pieces in a row needed to win
+	 */
+	public GUI(int cols, int rows, int winLength) {
+		NUM_COLS = cols;
+		NUM_ROWS = rows;
+		WIN_LENGTH = winLength;
+		_book = loadBook();
+		_database = loadDatabase();
+		_latency = new LatencyHistogram();
+		_games = openGames();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				if(_latency.count() > 0)
+					System.out.print("Computer reply times: " + _latency);
+			}
+		});
 		init();
 	}
+	//opens the opening book if there is one, returning null otherwise
+	private static OpeningBook loadBook() {
+		File f = new File(BOOK_FILE);
+		if(!f.exists())
+			return null;
+		try {
+			return new OpeningBook(f);
+		} catch(IOException e) {
+			return null;//play without it
+		}
+	}
+	//opens the game store, returning null if the board is too big to store or the file can't be used
+	private GameStore openGames() {
+		if(NUM_COLS > GameRecord.MAX_COLUMNS || !new Board(NUM_COLS, NUM_ROWS, WIN_LENGTH).compact())
+			return null;
+		try {
+			return new GameStore(new File(GAMES_FILE), NUM_COLS, NUM_ROWS, WIN_LENGTH);
+		} catch(IOException e) {
+			return null;//play without it
+		}
+	}
+	//adds the game that just ended to the store
+	private void saveGame() {
+		if(_games == null || _game.piecesPlayed() == 0)
+			return;
+		try {
+			_games.add(new GameRecord(_game));
+			_games.flush();
+		} catch(IOException e) {
+			_games = null;//stop trying to store games
+		}
+	}
+	//opens the database of solved positions for the board if there is one, returning null otherwise
+	private SolvedDatabase loadDatabase() {
+		File f = new File(SolvedDatabase.fileName(NUM_COLS, NUM_ROWS));
+		if(WIN_LENGTH != 4 || !f.exists())
+			return null;
+		try {
+			return new SolvedDatabase(f);
+		} catch(IOException e) {
+			return null;//search instead
+		}
+	}
+	//Stops the computer thinking about the old game, and starts a new one
+	private void reset() {
+		if(_thinking != null) {
+			_thinking.cancel(false);
+			_ai.cancel();
+			_thinking = null;
+		}
+		_ponderer.shutdown();
+		if(_mcts != null) {
+			_mcts.cancel();
+			_mcts.shutdown();
+		}
+		saveGame();
+		_frame.dispose();//remove the old game
+		init();//create a new one
+	}
 	//Initializes a fresh game board
 	private void init() {
-		_game = new Board(NUM_COLS,NUM_ROWS);
-		_col = new DrawingPane[NUM_COLS];
+		_game = new Board(NUM_COLS,NUM_ROWS,WIN_LENGTH);
 		_aiEnabled = true;
-		_player = new Player1();
+		_player = Piece.P1;
+		SearchContext context = new SearchContext(NUM_COLS);
+		context.setBook(_book);
+		if(_game.compact() && WIN_LENGTH == 4)//the solver only plays four in a row on small boards
+			context.setSolver(new Solver(NUM_COLS, NUM_ROWS, 21), SOLVER_CELLS);//each game gets its own, a cancelled search may still be using the old one
+		context.setDatabase(_database);
+		_ai = new IterativeDeepening(context, AI_TIME, 0, 0);
+		_ponderer = new Ponderer(_ai);
+		_mcts = _game.compact() ? null : new MonteCarlo(Runtime.getRuntime().availableProcessors(), AI_TIME, 0);
 		
 		//set up the game board
-		_boardArea = new JPanel();
-		_boardArea.setBackground(Color.BLACK);
-		_boardArea.setLayout(new GridLayout(1,NUM_COLS));
-		for(int c = 0; c < NUM_COLS; c++) {
-			_col[c] = new DrawingPane(_game,c);
-			_col[c].setBackground(new Color(0,0,0));
-			_col[c].addMouseListener(this);
-			_boardArea.add(_col[c]);
-		}
+		_boardArea = new DrawingPane(_game);
+		_boardArea.addMouseListener(this);
+		_boardArea.addMouseMotionListener(this);
 		
 		//set up the containing frame
 		_frame = new JFrame("Connect Four");
-		_frame.setSize((PIECE_SIZE*(2+NUM_COLS)/5 + PIECE_SIZE*NUM_COLS),(PIECE_SIZE*(2+NUM_ROWS)/5 + PIECE_SIZE*NUM_ROWS));
+		int size = Math.min(PIECE_SIZE, BOARD_SIZE/Math.max(NUM_COLS, NUM_ROWS));
+		_frame.setSize((size*(2+NUM_COLS)/5 + size*NUM_COLS),(size*(2+NUM_ROWS)/5 + size*NUM_ROWS));
 		_frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		_frame.setVisible(true);
 		_frame.add(_boardArea);
 	}
 	/**
 	 * Initializes the gui for the connect four game
-	 * @param args - none
+	 * @param args - none for the standard game, or the number of columns, rows and pieces in a row needed to win
 	 */
 	public static void main(String args[]) {
-		new GUI();
+		if(args.length >= 3)
+			new GUI(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		else
+			new GUI();
 	}
 	/**
 	 * Attempts to place a piece for the active player in the column clicked on.
-	 * Immediately makes the ai opponent's move if there is one.
+	 * Starts the ai opponent thinking about its move if there is one.
 	 * Pops up a dialog if either player wins, or the game ends in a draw.
-	 * Does nothing if the initial placement was not valid.
+	 * Does nothing if the initial placement was not valid, or the computer is still thinking.
 	 */
 	@Override
 	public void mouseClicked(MouseEvent e) {
-		DrawingPane p = source(e);
-		if(p == null || _game.gameWon())//wasn't relevant to the game board, or the game is already over
+		int col = _boardArea.columnAt(e.getX());
+		if(col < 0 || _game.gameWon() || _thinking != null)//wasn't on the game board, the game is already over, or it isn't the player's turn
 			return;
-		if(_game.place(_player, p.getCol())) {//true only if the placement was valid
-			_boardArea.repaint();
+		if(_game.place(_player, col)) {//true only if the placement was valid
+			_boardArea.pieceAdded(col);
 			if(_game.gameWon()) {
 				playerWin();
 				return;
 			}
 			_player = _player.next();
-			if(_aiEnabled) {//always true for now
-				GTN ai = new GTN(_game, 0, 6);
-				_game.place(_player, ai.getBestMove());
-				_boardArea.repaint();
-				if(_game.gameWon()) {
-					computerWin();
-					return;
-				}
-				_player = _player.next();	
-			}
 			if(_game.fullBoard()) {//neither player won, and the board is now full
 				catsGame();
 				return;
 			}
+			if(_aiEnabled) {//always true for now
+				_thinking = new AIMove();
+				_thinking.execute();
+			}
+		}
+	}
+	//Places the computer's piece once it has decided on a move, and shows how much it searched in the title bar
+	private void computerMove(int col, String searched) {
+		_thinking = null;
+		_frame.setTitle("Connect Four - " + searched);
+		_game.place(_player, col);
+		_boardArea.pieceAdded(col);
+		if(_game.gameWon()) {
+			computerWin();
+			return;
+		}
+		_player = _player.next();
+		if(_game.fullBoard()) {//neither player won, and the board is now full
+			catsGame();
+			return;
+		}
+	}
+	/**
+	 * Searches for the computer's move on a background thread, using a copy of the board so the game
+	 * can be drawn while it thinks.  Each finished depth is shown in the title bar, and the move is played
+	 * back on the event dispatch thread unless the game was reset first.
+	 */
+	private class AIMove extends SwingWorker<Integer, String> implements SearchListener {
+		private Board _snapshot;
+		private Ponderer _engine; //kept in case the game is reset, and _ponderer replaced, before the search starts
+		private MonteCarlo _montecarlo;
+		private IterativeDeepening _search;
+		private long _start; //when the player clicked
+		private ReplyEvent _event;
+		private boolean _pondered; //true if the move was found before the click
+		private String _searched; //a description of the search, set once it is finished
+		
+		public AIMove() {
+			_start = System.nanoTime();
+			_event = new ReplyEvent();
+			_event.begin();
+			_snapshot = _game.copy();
+			_engine = _ponderer;
+			_montecarlo = _mcts;
+			_search = _ai;
+			_search.setListener(this);
+			_frame.setTitle("Connect Four - thinking...");
+		}
+		@Override
+		protected Integer doInBackground() {
+			if(_montecarlo != null) {
+				long playouts = _montecarlo.playouts();
+				int move = _montecarlo.bestMove(_snapshot);
+				_searched = String.format("played %dk random games, winning %.0f%%", (_montecarlo.playouts() - playouts)/1000, 100*_montecarlo.winRate());
+				return move;
+			}
+			long pondered = _engine.instantMoves();
+			int move = _engine.bestMove(_snapshot);
+			_pondered = _engine.instantMoves() > pondered;
+			if(_pondered)
+				_searched = "answered from thinking on your time";
+			else {
+				SearchStats stats = _search.stats();
+				_searched = String.format("searched %d plies, %.0fk nodes/s", stats.depth(), stats.nodesPerSecond()/1000);
+			}
+			return move;
+		}
+		@Override
+		public void searched(int depth, int move, int value) {
+			publish("Connect Four - thinking: depth " + depth + ", column " + (move + 1));
+		}
+		@Override
+		protected void process(List<String> progress) {
+			if(_thinking == this)//ignore a search that was cancelled
+				_frame.setTitle(progress.get(progress.size() - 1));
+		}
+		@Override
+		protected void done() {
+			if(_thinking != this || isCancelled())
+				return;
+			int move;
+			try {
+				move = get();
+			} catch(Exception e) {
+				throw new IllegalStateException("The computer could not choose a move", e);
+			}
+			_latency.record(System.nanoTime() - _start);
+			_event.end();
+			if(_event.shouldCommit()) {
+				_event.piecesPlayed = _snapshot.piecesPlayed();
+				_event.column = move;
+				_event.pondered = _pondered;
+				_event.commit();
+			}
+			computerMove(move, _searched);
 		}
 	}
 	//Displays a victory message for the player and resets the board
 	private void playerWin() {
 		JOptionPane.showMessageDialog(null, "Congratulations!  You have defeated the computer in a gruelling game of connect four!\n" +
 				"The board will reset and you may play again once you close this window.");
-		_frame.dispose();//remove the old game
-		init();//create a new one
+		reset();
 		
 	}
 	//Displays a defeat message for the player and resets the board
 	private void computerWin() {
 		JOptionPane.showMessageDialog(null, "Oh the horror!  You have been defeated by the computer in a gruelling game of connect four!\n" +
 				"The board will reset and you may try again once you close this window.");
-		_frame.dispose();//remove the old game
-		init();//create a new one
+		reset();
 	}
 	//Displays a draw message for the player and resets the board
 	private void catsGame() {
 		JOptionPane.showMessageDialog(null, "Well, on the plus side you managed to avoid losing... however you also avoided winning!\n" +
 				"The board will reset and you may try again once you close this window.");
-		_frame.dispose();//remove the old game
-		init();//create a new one
+		reset();
 	}
 	/**
 	 * Highlights the column that the mouse entered
 	 */
 	@Override
 	public void mouseEntered(MouseEvent e) {
-		DrawingPane p = source(e);
-		if(p == null)//wasn't relevant to the game board
-			return;
-		p.toggleHighlight();
-		p.repaint();
+		_boardArea.setHighlight(_boardArea.columnAt(e.getX()));
 	}
 	/**
 	 * Un-highlights the column that the mouse left
 	 */
 	@Override
 	public void mouseExited(MouseEvent e) {
-		DrawingPane p = source(e);
-		if(p == null)//wasn't relevant to the game board
-			return;
-		p.toggleHighlight();
-		p.repaint();
+		_boardArea.setHighlight(-1);
+	}
+	/**
+	 * Moves the highlight to the column the mouse is over, which only repaints anything when the mouse crosses into another column
+	 */
+	@Override
+	public void mouseMoved(MouseEvent e) {
+		_boardArea.setHighlight(_boardArea.columnAt(e.getX()));
+	}
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		mouseMoved(e);
 	}
 	@Override
 	public void mousePressed(MouseEvent e) {}//do nothing
 	@Override
 	public void mouseReleased(MouseEvent e) {}//do nothing
-	
-	//returns the column clicked on, or null if the click was not on the board
-	private DrawingPane source(MouseEvent e) {
-		for(int i = 0; i < NUM_COLS; i++) {
-			if(e.getSource().equals(_col[i])) {
-				return _col[i];
-			}
-		}
-		return null;//source was not one of the columns
-	}
 }
@@ -0,0 +1,23 @@
+package gui;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event covering the time from the player's click to the computer's piece appearing
+ * @author Zach Kemphues
+ */
+@Name("connectfour.Reply")
+@Label("Computer Reply")
+@Category("Connect Four")
+@Description("The time from the player's move to the computer's reply")
+class ReplyEvent extends jdk.jfr.Event {
+	@Label("Pieces Played")
+	int piecesPlayed;
+	@Label("Column")
+	int column;
+	@Label("Pondered")
+	@Description("The reply was found while the player was thinking, without searching after the click")
+	boolean pondered;
+}
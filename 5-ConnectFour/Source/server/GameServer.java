@@ -0,0 +1,276 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import code.*;
+
+/**
+ * Hosts many games against the computer at once over a local TCP socket, without a user interface.
+ * Each connection is a session with its own board, and the player always moves first.  The protocol is one command per line,
+ * each answered with one line:
+ *   NEW [cols rows k]  starts a new game, on the standard board unless a size is given, answered with "OK cols rows k"
+ *   MOVE c             plays in column c, counting from 0, answered with the computer's reply "MOVE m", followed by
+ *                      " END COMPUTER" or " END DRAW" if that ends the game.  If the player's move ends the game the answer is
+ *                      "END PLAYER" or "END DRAW" instead, and if the server is too busy to think it is "BUSY" and the move is taken back.
+ *   STATS              answered with the server's metrics
+ *   QUIT               closes the connection
+ * Anything else is answered with "ERR" and the reason.
+ * The computer's moves are searched on a fixed pool of worker threads, one per core by default.  Each session can only wait for one
+ * move at a time and waiting moves are searched in the order they arrived, so no session can starve the others.  Only a limited
+ * number of moves can wait, beyond that players are told the server is busy instead of the wait growing without limit.
+ * Each move has a time budget that starts when the player's move arrives, so time spent waiting for a worker is taken out of the search.
+ * Connections are handled by one thread each from a pool that grows as needed.
+ * @author Zach Kemphues
+ */
+public class GameServer implements Closeable {
+	/** The port used unless another one is given */
+	public static final int DEFAULT_PORT = 4444;
+	private static final long DEFAULT_MOVE_MILLIS = 100;
+	private static final int WAITING_PER_WORKER = 16; //moves that can wait for each worker before the server is busy
+	private static final int MAX_CELLS = 1000; //the biggest board a session can ask for
+	private static final int TABLE_BITS = 16; //each worker's transposition table, shared by every session it searches for
+
+	private final long MOVE_MILLIS;
+	private ServerSocket _socket;
+	private ExecutorService _connections;
+	private ThreadPoolExecutor _workers;
+	private Set<Socket> _clients; //the open connections, closed when the server is
+	private ThreadLocal<HashMap<String, SearchContext>> _contexts; //each worker's contexts, by board size so tables never mix sizes
+
+	private long _start;
+	private AtomicInteger _activeSessions;
+	private AtomicLong _sessions;
+	private AtomicLong _moves;
+	private AtomicLong _busy;
+	private LatencyHistogram _latency; //from a player's move arriving to the reply being sent, only used while holding its lock
+	private LatencyHistogram _waiting; //from a player's move arriving to a worker starting on it
+
+	/**
+	 * Starts a server on the local machine
+	 * @param port - the port to listen on, or 0 for any free port
+	 * @param workers - the number of moves to search at once
+	 * @param moveMillis - the number of milliseconds the computer has for each move, including time spent waiting for a worker
+	 * @param waiting - the number of moves that can wait for a worker before players are told the server is busy
+	 * @throws IOException - if the port cannot be listened on
+	 */
+	public GameServer(int port, int workers, long moveMillis, int waiting) throws IOException {
+		MOVE_MILLIS = moveMillis;
+		_socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		_clients = ConcurrentHashMap.newKeySet();
+		_contexts = ThreadLocal.withInitial(HashMap::new);
+		_workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(waiting));
+		_connections = Executors.newCachedThreadPool();
+		_start = System.nanoTime();
+		_activeSessions = new AtomicInteger();
+		_sessions = new AtomicLong();
+		_moves = new AtomicLong();
+		_busy = new AtomicLong();
+		_latency = new LatencyHistogram();
+		_waiting = new LatencyHistogram();
+		Thread acceptor = new Thread(this::accept, "GameServer acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	//hands each new connection to its own thread until the server is closed
+	private void accept() {
+		while(!_socket.isClosed()) {
+			try {
+				Socket client = _socket.accept();
+				_clients.add(client);
+				_connections.execute(() -> serve(client));
+			} catch(IOException | RejectedExecutionException e) {
+				return;//closed
+			}
+		}
+	}
+	/**
+	 * @return - the port the server is listening on
+	 */
+	public int port() {
+		return _socket.getLocalPort();
+	}
+	//plays games with one client until it quits or disconnects
+	private void serve(Socket client) {
+		_activeSessions.incrementAndGet();
+		_sessions.incrementAndGet();
+		try {
+			client.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+			PrintWriter out = new PrintWriter(client.getOutputStream(), true);
+			Board b = new Board();
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] words = line.trim().split("\\s+");
+				String reply;
+				try {
+					if(words[0].equals("QUIT"))
+						break;
+					else if(words[0].equals("NEW")) {
+						Board created = words.length == 4 ? newBoard(Integer.parseInt(words[1]), Integer.parseInt(words[2]), Integer.parseInt(words[3])) : new Board();
+						if(created == null)
+							reply = "ERR a board that size can't be played on";
+						else {
+							b = created;
+							reply = "OK " + b.columnsOnBoard() + " " + b.rowsOnBoard() + " " + b.winLength();
+						}
+					}
+					else if(words[0].equals("MOVE") && words.length == 2)
+						reply = move(b, Integer.parseInt(words[1]));
+					else if(words[0].equals("STATS"))
+						reply = stats();
+					else
+						reply = "ERR unknown command \"" + line + "\"";
+				} catch(NumberFormatException e) {
+					reply = "ERR expected a number in \"" + line + "\"";
+				}
+				out.println(reply);
+			}
+		} catch(IOException e) {
+			//the client went away
+		} finally {
+			_activeSessions.decrementAndGet();
+			_clients.remove(client);
+			try {
+				client.close();
+			} catch(IOException e) {
+				//already closed
+			}
+		}
+	}
+	//returns a new board, or null if it can't be played on or is too big
+	private static Board newBoard(int cols, int rows, int winLength) {
+		if((long)cols*rows > MAX_CELLS)
+			return null;
+		try {
+			return new Board(cols, rows, winLength);
+		} catch(IllegalArgumentException e) {
+			return null;
+		}
+	}
+	//plays the player's move and the computer's reply, returning the line to answer with
+	private String move(Board b, int col) {
+		long arrived = System.nanoTime();
+		if(b.gameWon() || b.fullBoard())
+			return "ERR the game is over";
+		if(col < 0 || col >= b.columnsOnBoard() || !b.place(b.lastPiece().next(), col))
+			return "ERR column " + col + " is full or not on the board";
+		if(b.gameWon())
+			return "END PLAYER";
+		if(b.fullBoard())
+			return "END DRAW";
+		Future<Integer> reply;
+		try {
+			reply = _workers.submit(() -> think(b, arrived));
+		} catch(RejectedExecutionException e) {
+			b.undo();
+			_busy.incrementAndGet();
+			return "BUSY";
+		}
+		int move;
+		try {
+			move = reply.get();
+		} catch(InterruptedException | ExecutionException e) {
+			b.undo();
+			return "ERR the computer could not choose a move";
+		}
+		b.place(b.lastPiece().next(), move);
+		_moves.incrementAndGet();
+		synchronized(_latency) {
+			_latency.record(System.nanoTime() - arrived);
+		}
+		if(b.gameWon())
+			return "MOVE " + move + " END COMPUTER";
+		if(b.fullBoard())
+			return "MOVE " + move + " END DRAW";
+		return "MOVE " + move;
+	}
+	//searches for the computer's move on a worker thread, with whatever is left of the move's time budget
+	private int think(Board b, long arrived) {
+		long waited = System.nanoTime() - arrived;
+		synchronized(_latency) {
+			_waiting.record(waited);
+		}
+		long left = Math.max(1, MOVE_MILLIS - waited/1000000);//the first ply is always searched, so there is always a move
+		String size = b.columnsOnBoard() + "x" + b.rowsOnBoard() + "x" + b.winLength();
+		SearchContext context = _contexts.get().computeIfAbsent(size,
+				s -> new SearchContext(b.columnsOnBoard(), new TranspositionTable(TABLE_BITS, TranspositionTable.DEPTH_PREFERRED)));
+		return new IterativeDeepening(context, left, 0, 0).bestMove(b);
+	}
+	/**
+	 * @return - the number of sessions connected right now
+	 */
+	public int activeSessions() {
+		return _activeSessions.get();
+	}
+	/**
+	 * @return - the number of moves the computer has made since the server started
+	 */
+	public long moves() {
+		return _moves.get();
+	}
+	/**
+	 * @return - the number of moves taken back because the server was busy
+	 */
+	public long busy() {
+		return _busy.get();
+	}
+	/**
+	 * @return - the server's metrics on one line: sessions, moves per second, moves turned away, the time moves waited for a worker
+	 * and the time from a player's move to the reply
+	 */
+	public String stats() {
+		double seconds = (System.nanoTime() - _start)/1e9;
+		synchronized(_latency) {
+			return String.format("sessions %d active %d total, %d moves at %.1f/s, %d busy, waited %.1f ms mean, replied %.1f ms mean %d ms p50 %d ms p99 %.1f ms max",
+					_activeSessions.get(), _sessions.get(), _moves.get(), _moves.get()/seconds, _busy.get(), _waiting.meanMillis(),
+					_latency.meanMillis(), _latency.percentileMillis(0.5), _latency.percentileMillis(0.99), _latency.maxMillis());
+		}
+	}
+	/**
+	 * Stops listening, disconnects every session and stops the workers
+	 */
+	@Override
+	public void close() throws IOException {
+		_socket.close();
+		for(Socket client : _clients)
+			client.close();
+		_connections.shutdownNow();
+		_workers.shutdownNow();
+	}
+
+	/**
+	 * Runs a server until the program is stopped, printing its metrics every 10 seconds
+	 * @param args - optionally the port, the number of worker threads and the milliseconds the computer has for each move
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long millis = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MOVE_MILLIS;
+		GameServer server = new GameServer(port, workers, millis, workers*WAITING_PER_WORKER);
+		System.out.println("Listening on port " + server.port() + " with " + workers + " workers and " + millis + " ms per move");
+		while(true) {
+			Thread.sleep(10000);
+			System.out.println(server.stats());
+		}
+	}
+}
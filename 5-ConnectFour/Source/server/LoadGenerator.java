@@ -0,0 +1,176 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import code.Board;
+import code.LatencyHistogram;
+
+/**
+ * Plays many games against a GameServer at once to measure how many sessions it can handle
+ * Each session connects, then plays random moves game after game until the time is up, timing how long each reply takes.
+ * Busy replies are counted and retried after a pause, which doubles each time the server is still busy so waiting sessions don't swamp it.
+ * Running it with more and more sessions shows where the replies start to slow down, and so how many sessions each core can serve.
+ * @author Zach Kemphues
+ */
+public class LoadGenerator {
+	private static final int DEFAULT_SESSIONS = 100;
+	private static final int DEFAULT_SECONDS = 10;
+	private static final long BUSY_PAUSE = 10; //milliseconds to wait before trying a busy move again the first time
+	private static final long MAX_BUSY_PAUSE = 1000;
+
+	private final String HOST;
+	private final int PORT;
+	private final int SESSIONS;
+
+	private long _games; //totals for every session, only used while holding _latency's lock
+	private long _moves;
+	private long _busy;
+	private long _errors;
+	private long _nanos; //how long the last run took
+	private LatencyHistogram _latency;
+
+	/**
+	 * Prepares to put load on a server
+	 * @param host - the server's host
+	 * @param port - the server's port
+	 * @param sessions - the number of games to play at once
+	 */
+	public LoadGenerator(String host, int port, int sessions) {
+		HOST = host;
+		PORT = port;
+		SESSIONS = sessions;
+		_latency = new LatencyHistogram();
+	}
+	/**
+	 * Plays games on every session until the time is up, adding to the totals
+	 * @param millis - how long to play for
+	 * @throws InterruptedException - if interrupted while waiting for the sessions to finish
+	 */
+	public void run(long millis) throws InterruptedException {
+		ExecutorService sessions = Executors.newFixedThreadPool(SESSIONS);
+		long start = System.nanoTime();
+		long end = start + millis*1000000;
+		for(int i = 0; i < SESSIONS; i++) {
+			final long seed = i;
+			sessions.execute(() -> play(seed, end));
+		}
+		sessions.shutdown();
+		sessions.awaitTermination(millis + 60000, TimeUnit.MILLISECONDS);
+		_nanos = System.nanoTime() - start;
+	}
+	//plays random games on one connection until the end time
+	private void play(long seed, long end) {
+		Random rand = new Random(seed);
+		LatencyHistogram latency = new LatencyHistogram();
+		long games = 0;
+		long moves = 0;
+		long busy = 0;
+		long errors = 0;
+		long pause = BUSY_PAUSE;
+		try(Socket s = new Socket(HOST, PORT)) {
+			s.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+			PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+			Board b = null;
+			while(System.nanoTime() < end) {
+				if(b == null || b.gameWon() || b.fullBoard()) {
+					out.println("NEW");
+					if(!in.readLine().startsWith("OK"))
+						throw new IOException("The server would not start a game");
+					if(b != null)
+						games++;
+					b = new Board();
+				}
+				int col;
+				do {
+					col = rand.nextInt(b.columnsOnBoard());
+				} while(b.isFull(col));
+				long sent = System.nanoTime();
+				out.println("MOVE " + col);
+				String reply = in.readLine();
+				if(reply == null)
+					throw new IOException("The server disconnected");
+				if(reply.equals("BUSY")) {
+					busy++;
+					Thread.sleep(pause + rand.nextInt((int)pause));//spread out so the sessions don't all come back at once
+					pause = Math.min(2*pause, MAX_BUSY_PAUSE);
+					continue;
+				}
+				pause = BUSY_PAUSE;
+				latency.record(System.nanoTime() - sent);
+				if(reply.startsWith("ERR")) {
+					errors++;
+					b = null;
+					continue;
+				}
+				b.place(b.lastPiece().next(), col);
+				String[] words = reply.split(" ");
+				if(words[0].equals("MOVE")) {
+					b.place(b.lastPiece().next(), Integer.parseInt(words[1]));
+					moves++;
+				}
+			}
+			out.println("QUIT");
+		} catch(IOException | RuntimeException e) {
+			errors++;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized(_latency) {
+			_latency.add(latency);
+			_games += games;
+			_moves += moves;
+			_busy += busy;
+			_errors += errors;
+		}
+	}
+	/**
+	 * @return - the number of replies the computer made
+	 */
+	public long moves() {
+		synchronized(_latency) {
+			return _moves;
+		}
+	}
+	/**
+	 * @return - the number of errors, including sessions that could not connect
+	 */
+	public long errors() {
+		synchronized(_latency) {
+			return _errors;
+		}
+	}
+	/**
+	 * @return - a description of the last run: games and moves played, moves per second, busy replies and reply times
+	 */
+	public String summary() {
+		synchronized(_latency) {
+			double seconds = _nanos/1e9;
+			return String.format("%d sessions: %d games, %d moves at %.1f/s, %d busy, %d errors%nReply times: %s",
+					SESSIONS, _games, _moves, _moves/seconds, _busy, _errors, _latency);
+		}
+	}
+
+	/**
+	 * Puts load on a server and prints what happened
+	 * @param args - optionally the number of sessions, the number of seconds to play for, the server's port and host
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+		int port = args.length > 2 ? Integer.parseInt(args[2]) : GameServer.DEFAULT_PORT;
+		String host = args.length > 3 ? args[3] : "localhost";
+		LoadGenerator load = new LoadGenerator(host, port, sessions);
+		load.run(seconds*1000L);
+		System.out.print(load.summary());
+		System.out.printf("%.1f moves/s per core of this machine%n", load.moves()/(load._nanos/1e9)/Runtime.getRuntime().availableProcessors());
+	}
+}